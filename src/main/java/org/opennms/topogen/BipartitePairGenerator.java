@@ -0,0 +1,63 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/** pairs a random element of the left list with a random element of the right list, used to connect two segments */
+public class BipartitePairGenerator<E> implements PairGenerator<E> {
+    private final List<E> leftElements;
+    private final List<E> rightElements;
+    private final Random random;
+
+    BipartitePairGenerator(List<E> leftElements, List<E> rightElements){
+        this(leftElements, rightElements, 42);
+    }
+
+    BipartitePairGenerator(List<E> leftElements, List<E> rightElements, long seed){
+        if(leftElements == null || leftElements.isEmpty() || rightElements == null || rightElements.isEmpty()){
+            throw new IllegalArgumentException("Need at least 1 element in each list to make a pair");
+        }
+        this.leftElements = leftElements;
+        this.rightElements = rightElements;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public Pair<E, E> next(){
+        return Pair.of(getRandomElement(leftElements), getRandomElement(rightElements));
+    }
+
+    private E getRandomElement(List<E> list) {
+        return list.get(random.nextInt(list.size()));
+    }
+}
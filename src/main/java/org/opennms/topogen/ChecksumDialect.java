@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Computes the same 64 bit hash of a row in Java and in SQL: the first 8 bytes of a digest of the column values,
+ * separated by '|' with \N for null. Every database gets the digest it can compute without extensions.
+ */
+enum ChecksumDialect {
+
+    POSTGRESQL("MD5") {
+        @Override
+        String hashSql(String text) {
+            return "('x' || substr(md5(" + text + "), 1, 16))::bit(64)::bigint";
+        }
+    },
+    H2("SHA-256") {
+        @Override
+        String hashSql(String text) {
+            return "CAST(CAST(HASH('SHA256', STRINGTOUTF8(" + text + "), 1) AS BINARY(8)) AS BIGINT)";
+        }
+    };
+
+    private final static String NULL = "\\N";
+    private final static String SEPARATOR = "|";
+
+    private final ThreadLocal<MessageDigest> digest;
+
+    ChecksumDialect(String algorithm) {
+        this.digest = ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    static ChecksumDialect of(Connection connection) throws SQLException {
+        String product = connection.getMetaData().getDatabaseProductName();
+        if ("PostgreSQL".equals(product)) {
+            return POSTGRESQL;
+        } else if ("H2".equals(product)) {
+            return H2;
+        }
+        throw new IllegalArgumentException("can't compute checksums in a " + product + " database");
+    }
+
+    abstract String hashSql(String text);
+
+    /** SQL expression for the hash of the given columns. */
+    String hashSql(String... columns) {
+        StringBuilder text = new StringBuilder();
+        for (String column : columns) {
+            if (text.length() > 0) {
+                text.append(" || '").append(SEPARATOR).append("' || ");
+            }
+            text.append("COALESCE(CAST(").append(column).append(" AS VARCHAR), '").append(NULL).append("')");
+        }
+        return hashSql(text.toString());
+    }
+
+    /** Hash of the given values, same as {@link #hashSql(String...)} computes for a row with these values. */
+    long hash(Object... values) {
+        StringBuilder text = new StringBuilder();
+        for (Object value : values) {
+            if (text.length() > 0) {
+                text.append(SEPARATOR);
+            }
+            text.append(value == null ? NULL : value.toString());
+        }
+        byte[] hash = digest.get().digest(text.toString().getBytes(StandardCharsets.UTF_8));
+        long result = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            result = (result << 8) | (hash[i] & 0xFF);
+        }
+        return result;
+    }
+}
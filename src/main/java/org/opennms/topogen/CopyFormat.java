@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Writes values in the text format of PostgreSQL's COPY ... FROM STDIN: tab separated columns, one row per line.
+ * The rows are collected as UTF-8 bytes, ready to be sent to the database.
+ */
+class CopyFormat {
+
+    private byte[] bytes;
+    private int size;
+    private boolean firstColumn = true;
+
+    CopyFormat(int initialCapacity) {
+        this.bytes = new byte[Math.max(16, initialCapacity)];
+    }
+
+    CopyFormat add(int value) {
+        separate();
+        appendAscii(Integer.toString(value));
+        return this;
+    }
+
+    CopyFormat add(Date value) {
+        if (value == null) {
+            return addNull();
+        }
+        return addTimestamp(value.getTime());
+    }
+
+    CopyFormat addTimestamp(long millis) {
+        separate();
+        appendAscii(new Timestamp(millis).toString());
+        return this;
+    }
+
+    CopyFormat add(String value) {
+        if (value == null) {
+            return addNull();
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+                return addUtf8(utf8, 0, utf8.length);
+            }
+        }
+        separate();
+        ensureCapacity(value.length() * 2);
+        for (int i = 0; i < value.length(); i++) {
+            appendEscaped((byte) value.charAt(i));
+        }
+        return this;
+    }
+
+    /** Adds a value that is already UTF-8 encoded, e.g. read from an off heap buffer. */
+    CopyFormat addUtf8(byte[] utf8, int offset, int length) {
+        separate();
+        ensureCapacity(length * 2);
+        for (int i = offset; i < offset + length; i++) {
+            appendEscaped(utf8[i]);
+        }
+        return this;
+    }
+
+    CopyFormat addNull() {
+        separate();
+        appendAscii("\\N");
+        return this;
+    }
+
+    void endRow() {
+        ensureCapacity(1);
+        bytes[size++] = '\n';
+        firstColumn = true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    private void appendEscaped(byte b) {
+        // the special characters are all ASCII, bytes of multi byte UTF-8 characters never match them
+        switch (b) {
+            case '\\': bytes[size++] = '\\'; bytes[size++] = '\\'; break;
+            case '\t': bytes[size++] = '\\'; bytes[size++] = 't'; break;
+            case '\n': bytes[size++] = '\\'; bytes[size++] = 'n'; break;
+            case '\r': bytes[size++] = '\\'; bytes[size++] = 'r'; break;
+            default: bytes[size++] = b;
+        }
+    }
+
+    private void appendAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            bytes[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void separate() {
+        if (!firstColumn) {
+            ensureCapacity(1);
+            bytes[size++] = '\t';
+        }
+        firstColumn = false;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + additional));
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compact on disk format for (large) edge lists, read with {@link MappedEdgeList}:
+ * <pre>
+ * magic    4 bytes "TGEL"
+ * version  1 byte
+ * nodes    int, node indexes are 0..nodes-1
+ * edges    long
+ * per edge: zigzag varint (source - previous source), zigzag varint (target - source)
+ * </pre>
+ * Edge lists exported in node order compress to 2-3 bytes per edge.
+ */
+public class EdgeListFile {
+
+    private final static Logger LOG = LoggerFactory.getLogger(EdgeListFile.class);
+
+    final static byte[] MAGIC = {'T', 'G', 'E', 'L'};
+    final static byte VERSION = 1;
+    final static int HEADER_SIZE = MAGIC.length + 1 + 4 + 8;
+    private final static int NODES_POSITION = MAGIC.length + 1;
+
+    public static boolean isCompact(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+        byte[] magic = new byte[MAGIC.length];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(magic);
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (magic[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The compact version of an edge list: the file itself if it is compact already, otherwise a converted copy
+     * {@code <file>.tgel} next to it or, if that directory is not writable, in the fallback directory. A converted copy
+     * is reused as long as it is newer than the text file.
+     */
+    public static File toCompact(File edges, File fallbackDirectory) throws IOException {
+        if (isCompact(edges)) {
+            return edges;
+        }
+        File nextToEdges = new File(edges.getPath() + ".tgel");
+        // the name includes the path, different edge lists with the same name must not share a converted copy
+        File inFallbackDirectory = new File(fallbackDirectory,
+                edges.getName() + "-" + Integer.toHexString(edges.getAbsolutePath().hashCode()) + ".tgel");
+        for (File compact : new File[]{nextToEdges, inFallbackDirectory}) {
+            if (compact.isFile() && compact.lastModified() >= edges.lastModified() && isCompact(compact)) {
+                LOG.info("using edge list {} converted before", compact);
+                return compact;
+            }
+        }
+        File compact = Files.isWritable(edges.getAbsoluteFile().getParentFile().toPath()) ? nextToEdges : inFallbackDirectory;
+        // convert into a temporary file first, an interrupted conversion must not look like a complete one
+        File converting = File.createTempFile(compact.getName(), ".converting", compact.getAbsoluteFile().getParentFile());
+        try {
+            convert(edges, converting);
+            Files.move(converting.toPath(), compact.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(converting.toPath());
+        }
+        return compact;
+    }
+
+    /**
+     * Converts a text edge list, one "source target" pair per line separated by whitespace or comma, as exported from
+     * OpenNMS or found in common graph datasets. Lines starting with # or % are comments. The node ids are mapped to
+     * dense indexes in order of appearance, self loops are dropped.
+     */
+    public static void convert(File text, File compact) throws IOException {
+        LOG.info("converting edge list {} into {}", text, compact);
+        NodeIndexes indexes = new NodeIndexes();
+        long edges = 0;
+        long selfLoops = 0;
+        int previousSource = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(text));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compact), 1 << 16))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(0); // nodes and edges are patched in at the end
+            out.writeLong(0);
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#") || line.startsWith("%")) {
+                    continue;
+                }
+                String[] columns = line.split("[\\s,]+");
+                if (columns.length < 2) {
+                    throw new IOException(String.format("expected source and target in line %s of %s but found: %s", lineNumber, text, line));
+                }
+                int source;
+                int target;
+                try {
+                    source = indexes.index(Long.parseLong(columns[0]));
+                    target = indexes.index(Long.parseLong(columns[1]));
+                } catch (NumberFormatException e) {
+                    throw new IOException(String.format("expected numeric source and target in line %s of %s but found: %s", lineNumber, text, line), e);
+                }
+                if (source == target) {
+                    selfLoops++;
+                    continue;
+                }
+                writeVarint(out, zigzag(source - previousSource));
+                writeVarint(out, zigzag(target - source));
+                previousSource = source;
+                edges++;
+            }
+        }
+        try (RandomAccessFile file = new RandomAccessFile(compact, "rw")) {
+            file.seek(NODES_POSITION);
+            file.writeInt(indexes.size);
+            file.writeLong(edges);
+        }
+        LOG.info("converted {} edges between {} nodes ({} bytes), dropped {} self loops", edges, indexes.size, compact.length(), selfLoops);
+    }
+
+    /**
+     * Maps node ids to dense indexes in order of appearance. Open addressing over primitive arrays: 16 to 32 bytes per
+     * node instead of a boxed map entry, so edge lists with tens of millions of nodes convert on a small heap.
+     */
+    static class NodeIndexes {
+        private final static int MAX_CAPACITY = 1 << 30;
+
+        private long[] ids = new long[1 << 10];
+        private int[] indexes = new int[1 << 10]; // index + 1, 0 marks a free slot
+        private int size;
+
+        int index(long id) {
+            int mask = ids.length - 1;
+            int slot = hash(id) & mask;
+            while (indexes[slot] != 0) {
+                if (ids[slot] == id) {
+                    return indexes[slot] - 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            ids[slot] = id;
+            indexes[slot] = ++size;
+            if (size > ids.length / 4 * 3) {
+                grow();
+            }
+            return size - 1;
+        }
+
+        private void grow() {
+            if (ids.length == MAX_CAPACITY) {
+                throw new IllegalStateException("edge list has more than " + size + " nodes");
+            }
+            long[] oldIds = ids;
+            int[] oldIndexes = indexes;
+            ids = new long[oldIds.length * 2];
+            indexes = new int[oldIndexes.length * 2];
+            int mask = ids.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIndexes[i] != 0) {
+                    int slot = hash(oldIds[i]) & mask;
+                    while (indexes[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    ids[slot] = oldIds[i];
+                    indexes[slot] = oldIndexes[i];
+                }
+            }
+        }
+
+        /** Finalizer of SplitMix64, exported node ids are often consecutive and would cluster with linear probing. */
+        private static int hash(long id) {
+            long z = (id ^ (id >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z = z ^ (z >>> 31);
+            return (int) (z ^ (z >>> 32));
+        }
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+/**
+ * Replays an imported edge list, scaled up by replicating it: replica r uses the elements
+ * r*nodes..(r+1)*nodes-1. A percentage of the edges is rewired to a random target in any replica, which also connects
+ * the replicas with each other. Starts from the beginning again once all replicas are done.
+ */
+public class EdgeListPairGenerator<E> implements PairGenerator<E> {
+
+    private final List<E> elements;
+    private final MappedEdgeList edges;
+    private final int scale;
+    private final int rewirePercent;
+    private final int amountNodes;
+    private Random random = new Random(42);
+    private int replica = 0;
+
+    EdgeListPairGenerator(List<E> elements, MappedEdgeList edges, int scale, int rewirePercent){
+        if(edges.getAmountEdges() == 0){
+            throw new IllegalArgumentException("Need at least 1 edge in edge list to make a pair");
+        }
+        if(scale < 1){
+            throw new IllegalArgumentException("Scale must be at least 1 but was " + scale);
+        }
+        if(rewirePercent < 0 || rewirePercent > 100){
+            throw new IllegalArgumentException("Rewire percentage must be between 0 and 100 but was " + rewirePercent);
+        }
+        try {
+            this.amountNodes = Math.multiplyExact(edges.getAmountNodes(), scale);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("%s replicas of %s nodes are more than %s nodes",
+                    scale, edges.getAmountNodes(), Integer.MAX_VALUE), e);
+        }
+        if(elements == null || elements.size() < amountNodes){
+            throw new IllegalArgumentException(String.format("Need at least %s elements for %s replicas of %s nodes",
+                    amountNodes, scale, edges.getAmountNodes()));
+        }
+        this.elements = elements;
+        this.edges = edges;
+        this.scale = scale;
+        this.rewirePercent = rewirePercent;
+        edges.rewind();
+    }
+
+    @Override
+    public Pair<E, E> next(){
+        if(!edges.next()){
+            replica = (replica + 1) % scale;
+            edges.rewind();
+            edges.next();
+        }
+        int offset = replica * edges.getAmountNodes();
+        int source = offset + edges.getSource();
+        int target = offset + edges.getTarget();
+        if(rewirePercent > 0 && random.nextInt(100) < rewirePercent){
+            target = getRandomIndexButNotSame(source);
+        }
+        return Pair.of(elements.get(source), elements.get(target));
+    }
+
+    private int getRandomIndexButNotSame(int notSame){
+        int value = random.nextInt(amountNodes);
+        while (value == notSame){
+            value = random.nextInt(amountNodes);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,322 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+package org.opennms.topogen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Collects statistics about a topology in one pass over its (undirected) edges. Nodes are identified by their index
+ * 0..amountNodes-1. On the heap there is a degree counter and a union-find structure for the connected components per
+ * node; every edge is kept as a pair key of 8 bytes off heap, in direct memory or in a memory mapped file. The pair keys
+ * give the exact amount of duplicate edges (by sorting them) and the adjacency for the diameter estimate.
+ * Several generators add their edges through a {@link Collector} each, which hands them over in batches.
+ */
+public class GraphStatistics implements Closeable {
+
+    private final static int PAIRS_SEGMENT_SIZE = 1 << 24; // 2M pair keys
+    private final static int SORT_RUN_LENGTH = 1 << 22; // pair keys sorted on the heap at a time, 32 MB
+    private final static int COLLECTOR_BATCH_SIZE = 1 << 16;
+    private final static int DIAMETER_SAMPLES = 8;
+    private final static long DIAMETER_WORK = 1L << 28; // nodes and neighbours visited by all sweeps together
+
+    private final int amountNodes;
+    private final int[] degrees;
+    private final int[] parents;
+    private final byte[] ranks;
+    private final File directory;
+    private final int sortRunLength;
+    private final OffHeapBuffer pairs; // (lower << 32) | higher of every edge
+    private int components;
+    private long edges;
+    private long duplicates = -1;
+    private int diameter = -1;
+    private int diameterSamples;
+
+    public GraphStatistics(int amountNodes) throws IOException {
+        this(amountNodes, null);
+    }
+
+    /** @param directory where to keep the pair keys in a memory mapped file, null to use direct memory instead */
+    public GraphStatistics(int amountNodes, File directory) throws IOException {
+        this(amountNodes, directory, SORT_RUN_LENGTH);
+    }
+
+    GraphStatistics(int amountNodes, File directory, int sortRunLength) throws IOException {
+        this.amountNodes = amountNodes;
+        this.degrees = new int[amountNodes];
+        this.parents = new int[amountNodes];
+        this.ranks = new byte[amountNodes];
+        for (int i = 0; i < amountNodes; i++) {
+            parents[i] = i;
+        }
+        this.components = amountNodes;
+        this.directory = directory;
+        this.sortRunLength = sortRunLength;
+        this.pairs = new OffHeapBuffer(PAIRS_SEGMENT_SIZE, directory);
+    }
+
+    /** Adds a single edge, not thread safe: concurrent generators use a {@link Collector} each. */
+    public void addEdge(int source, int target) {
+        addPair(pair(source, target));
+    }
+
+    /** Collects the edges of one generator, without locking per edge and without memory per node. */
+    public Collector collector() {
+        return new Collector();
+    }
+
+    public class Collector {
+        private final long[] batch = new long[COLLECTOR_BATCH_SIZE];
+        private int size;
+
+        private Collector() {
+        }
+
+        public void addEdge(int source, int target) {
+            batch[size++] = pair(source, target);
+            if (size == batch.length) {
+                flush();
+            }
+        }
+
+        /** Adds the collected edges to the statistics, must be called when the generator is done. */
+        public void flush() {
+            synchronized (GraphStatistics.this) {
+                for (int i = 0; i < size; i++) {
+                    addPair(batch[i]);
+                }
+            }
+            size = 0;
+        }
+    }
+
+    public long getEdges() {
+        return edges;
+    }
+
+    public int getComponents() {
+        return components;
+    }
+
+    /** Share of edges that connect a pair of nodes that was already connected before, 0..1. */
+    public double getDuplicateRatio() {
+        return edges == 0 ? 0 : (double) countDuplicates() / edges;
+    }
+
+    /** Amount of nodes per degree. */
+    public SortedMap<Integer, Integer> getDegreeHistogram() {
+        SortedMap<Integer, Integer> histogram = new TreeMap<>();
+        for (int degree : degrees) {
+            histogram.merge(degree, 1, Integer::sum);
+        }
+        return histogram;
+    }
+
+    /**
+     * Lower bound of the diameter, found by double sweeps (BFS from a random node, then BFS from the farthest node found)
+     * starting at a few sampled nodes. Large graphs get fewer samples, at least one, so that the sweeps stay within a
+     * fixed amount of work.
+     */
+    public int getDiameterEstimate() throws IOException {
+        if (diameter == -1) {
+            diameter = estimateDiameter();
+        }
+        return diameter;
+    }
+
+    public void write(Writer out) throws IOException {
+        PrintWriter writer = new PrintWriter(out);
+        writer.printf("nodes: %s%n", amountNodes);
+        writer.printf("edges: %s%n", edges);
+        writer.printf("connected components: %s%n", components);
+        writer.printf("duplicate edge ratio: %.6f (%s duplicates)%n", getDuplicateRatio(), countDuplicates());
+        writer.printf("diameter estimate: %s (lower bound from %s double sweeps)%n", getDiameterEstimate(), diameterSamples);
+        writer.printf("degree histogram (degree: nodes):%n");
+        for (Map.Entry<Integer, Integer> entry : getDegreeHistogram().entrySet()) {
+            writer.printf("  %s: %s%n", entry.getKey(), entry.getValue());
+        }
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        pairs.close();
+    }
+
+    private static long pair(int source, int target) {
+        return ((long) Math.min(source, target) << 32) | Math.max(source, target);
+    }
+
+    private void addPair(long pair) {
+        int lower = (int) (pair >>> 32);
+        int higher = (int) pair;
+        degrees[lower]++;
+        degrees[higher]++;
+        union(lower, higher);
+        pairs.putLong(edges * Long.BYTES, pair);
+        edges++;
+        duplicates = -1;
+        diameter = -1;
+    }
+
+    private int find(int node) {
+        while (parents[node] != node) {
+            parents[node] = parents[parents[node]]; // path halving
+            node = parents[node];
+        }
+        return node;
+    }
+
+    private void union(int a, int b) {
+        int rootA = find(a);
+        int rootB = find(b);
+        if (rootA == rootB) {
+            return;
+        }
+        if (ranks[rootA] < ranks[rootB]) {
+            parents[rootA] = rootB;
+        } else if (ranks[rootA] > ranks[rootB]) {
+            parents[rootB] = rootA;
+        } else {
+            parents[rootB] = rootA;
+            ranks[rootA]++;
+        }
+        components--;
+    }
+
+    /**
+     * Duplicates are equal neighbours in sorted order. The pair keys are sorted in runs that fit on the heap, the runs
+     * are merged while counting.
+     */
+    private long countDuplicates() {
+        if (duplicates != -1) {
+            return duplicates;
+        }
+        int runs = (int) ((edges + sortRunLength - 1) / sortRunLength);
+        long[] run = new long[(int) Math.min(edges, sortRunLength)];
+        for (int r = 0; r < runs; r++) {
+            long start = (long) r * sortRunLength;
+            int length = (int) Math.min(sortRunLength, edges - start);
+            for (int i = 0; i < length; i++) {
+                run[i] = pairs.getLong((start + i) * Long.BYTES);
+            }
+            Arrays.sort(run, 0, length);
+            for (int i = 0; i < length; i++) {
+                pairs.putLong((start + i) * Long.BYTES, run[i]);
+            }
+        }
+        // merge: repeatedly take the smallest head of all runs, there are few runs even for huge topologies
+        long[] positions = new long[runs];
+        long[] ends = new long[runs];
+        long[] heads = new long[runs];
+        for (int r = 0; r < runs; r++) {
+            positions[r] = (long) r * sortRunLength;
+            ends[r] = Math.min(positions[r] + sortRunLength, edges);
+            heads[r] = pairs.getLong(positions[r] * Long.BYTES);
+        }
+        long count = 0;
+        long previous = -1; // pair keys are never negative
+        for (long i = 0; i < edges; i++) {
+            int smallest = -1;
+            for (int r = 0; r < runs; r++) {
+                if (positions[r] < ends[r] && (smallest == -1 || heads[r] < heads[smallest])) {
+                    smallest = r;
+                }
+            }
+            if (heads[smallest] == previous) {
+                count++;
+            }
+            previous = heads[smallest];
+            if (++positions[smallest] < ends[smallest]) {
+                heads[smallest] = pairs.getLong(positions[smallest] * Long.BYTES);
+            }
+        }
+        duplicates = count;
+        return duplicates;
+    }
+
+    private int estimateDiameter() throws IOException {
+        // adjacency in compressed sparse row format off heap, the degrees tell us the size of each row
+        long[] offsets = new long[amountNodes + 1];
+        for (int i = 0; i < amountNodes; i++) {
+            offsets[i + 1] = offsets[i] + degrees[i];
+        }
+        try (OffHeapBuffer neighbours = new OffHeapBuffer(PAIRS_SEGMENT_SIZE, directory)) {
+            long[] fill = Arrays.copyOf(offsets, amountNodes);
+            for (long i = 0; i < edges; i++) {
+                long pair = pairs.getLong(i * Long.BYTES);
+                int lower = (int) (pair >>> 32);
+                int higher = (int) pair;
+                neighbours.putInt(fill[lower]++ * Integer.BYTES, higher);
+                neighbours.putInt(fill[higher]++ * Integer.BYTES, lower);
+            }
+
+            int[] distances = new int[amountNodes];
+            int[] queue = new int[amountNodes];
+            Random random = new Random(42);
+            int estimate = 0;
+            long workPerSample = 2 * (amountNodes + 2 * edges);
+            diameterSamples = amountNodes == 0 ? 0 : (int) Math.max(1, Math.min(DIAMETER_SAMPLES, DIAMETER_WORK / workPerSample));
+            for (int i = 0; i < diameterSamples; i++) {
+                int farthest = bfs(random.nextInt(amountNodes), offsets, neighbours, distances, queue);
+                int farthestFromFarthest = bfs(farthest, offsets, neighbours, distances, queue);
+                estimate = Math.max(estimate, distances[farthestFromFarthest]);
+            }
+            return estimate;
+        }
+    }
+
+    /** Breadth first search from start, returns the last (= one of the farthest) node reached. */
+    private int bfs(int start, long[] offsets, OffHeapBuffer neighbours, int[] distances, int[] queue) {
+        Arrays.fill(distances, -1);
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        distances[start] = 0;
+        while (head < tail) {
+            int node = queue[head++];
+            for (long i = offsets[node]; i < offsets[node + 1]; i++) {
+                int neighbour = neighbours.getInt(i * Integer.BYTES);
+                if (distances[neighbour] == -1) {
+                    distances[neighbour] = distances[node] + 1;
+                    queue[tail++] = neighbour;
+                }
+            }
+        }
+        return queue[tail - 1];
+    }
+}
@@ -0,0 +1,486 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.opennms.netmgt.model.CdpLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates, serializes and writes CdpLinks in three stages, each on its own thread(s). The stages are connected by bounded
+ * queues: a stage that is faster than its successor blocks once the queue is full instead of piling up links in memory.
+ * Independent LinkSources are generated in parallel by a pool of generator threads.
+ * The links are serialized once and written into every target database by a writer thread per target. With more than
+ * one target the serialize stage only waits if all targets are busy; chunks for a target that falls behind the others
+ * are spilled to disk and written after the rest.
+ * Each writer first prepares its target, e.g. writes the nodes and elements the links refer to, while generation and
+ * serialization already run; a target that is prepared early starts its COPY without waiting for the others.
+ * The time each stage spends working vs. waiting is reported at the end to show which stage is the bottleneck.
+ */
+public class LinkPipeline {
+
+    private final static Logger LOG = LoggerFactory.getLogger(LinkPipeline.class);
+
+    // markers for the end of the stream, compared by identity
+    private final static List<CdpLink> END_OF_BATCHES = Collections.unmodifiableList(new ArrayList<>());
+    private final static byte[] END_OF_CHUNKS = new byte[0];
+
+    private final static int SPILL_READ_SIZE = 1 << 20;
+    private final static long PROGRESS_INTERVAL_SECONDS = 10;
+
+    /** Produces the links, calls the sink for every generated link. */
+    @FunctionalInterface
+    public interface LinkSource {
+        void generate(Consumer<CdpLink> sink);
+    }
+
+    /** Writes what the links depend on into a target before its links are copied. */
+    @FunctionalInterface
+    public interface TargetPreparation {
+        void prepare(TopologyPersister persister) throws SQLException;
+    }
+
+    private final List<TopologyPersister> persisters;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final int generatorThreads;
+    private final File spillDirectory;
+
+    public LinkPipeline(TopologyPersister persister, int batchSize, int queueCapacity, int generatorThreads) {
+        this(Collections.singletonList(persister), batchSize, queueCapacity, generatorThreads);
+    }
+
+    public LinkPipeline(List<TopologyPersister> persisters, int batchSize, int queueCapacity, int generatorThreads) {
+        this(persisters, batchSize, queueCapacity, generatorThreads, null);
+    }
+
+    /** @param spillDirectory where the chunks of targets that fall behind are spilled to, null for the temp directory */
+    public LinkPipeline(List<TopologyPersister> persisters, int batchSize, int queueCapacity, int generatorThreads, File spillDirectory) {
+        this.persisters = persisters;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.generatorThreads = generatorThreads;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public void run(LinkSource source) throws SQLException {
+        run(Collections.singletonList(source));
+    }
+
+    public void run(List<LinkSource> sources) throws SQLException {
+        run(sources, persister -> {});
+    }
+
+    public void run(List<LinkSource> sources, TargetPreparation preparation) throws SQLException {
+        BlockingQueue<List<CdpLink>> batches = new ArrayBlockingQueue<>(queueCapacity);
+        int generators = Math.max(1, Math.min(generatorThreads, sources.size()));
+        List<Stage> generate = new ArrayList<>();
+        for (int i = 0; i < generators; i++) {
+            generate.add(new Stage("generate"));
+        }
+        Stage serialize = new Stage("serialize");
+        Semaphore taken = new Semaphore(0);
+        List<Target> targets = new ArrayList<>();
+        for (TopologyPersister persister : persisters) {
+            targets.add(new Target(targets.size() + 1, persister, taken));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(generators + 1 + targets.size());
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        progress.scheduleAtFixedRate(() -> logProgress(targets), PROGRESS_INTERVAL_SECONDS, PROGRESS_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        long start = System.nanoTime();
+        try {
+            CompletionService<Void> stages = new ExecutorCompletionService<>(executor);
+            AtomicInteger nextSource = new AtomicInteger();
+            AtomicInteger runningGenerators = new AtomicInteger(generators);
+            for (Stage generator : generate) {
+                stages.submit(() -> {
+                    generate(sources, nextSource, runningGenerators, batches, generator);
+                    return null;
+                });
+            }
+            stages.submit(() -> {
+                serialize(batches, targets, taken, serialize);
+                return null;
+            });
+            for (Target target : targets) {
+                stages.submit(() -> {
+                    target.write(preparation);
+                    return null;
+                });
+            }
+            for (int i = 0; i < generators + 1 + targets.size(); i++) {
+                stages.take().get(); // the first failing stage ends the pipeline
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the pipeline", e);
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        } finally {
+            executor.shutdownNow();
+            progress.shutdownNow();
+            for (Target target : targets) {
+                target.deleteSpillFile();
+            }
+        }
+        List<Stage> stages = new ArrayList<>(Arrays.asList(Stage.merge(generate), serialize));
+        for (Target target : targets) {
+            stages.add(target.stage);
+        }
+        report(System.nanoTime() - start, stages);
+    }
+
+    /** Rethrows the cause of a failed task: SQLExceptions and RuntimeExceptions as they are, others wrapped. */
+    static SQLException rethrow(ExecutionException e) throws SQLException {
+        Throwable cause = e.getCause();
+        if (cause instanceof SQLException) {
+            throw (SQLException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+    }
+
+    /** Takes the next source until all are done, the last generator to finish marks the end of the stream. */
+    private void generate(List<LinkSource> sources, AtomicInteger nextSource, AtomicInteger runningGenerators,
+                          BlockingQueue<List<CdpLink>> batches, Stage stage) throws InterruptedException {
+        stage.start();
+        BatchingSink sink = new BatchingSink(batches, stage);
+        int index;
+        while ((index = nextSource.getAndIncrement()) < sources.size()) {
+            sources.get(index).generate(sink);
+        }
+        sink.flush();
+        if (runningGenerators.decrementAndGet() == 0) {
+            stage.put(batches, END_OF_BATCHES);
+        }
+        stage.stop();
+    }
+
+    private void serialize(BlockingQueue<List<CdpLink>> batches, List<Target> targets, Semaphore taken, Stage stage)
+            throws InterruptedException, IOException {
+        stage.start();
+        List<CdpLink> batch;
+        while ((batch = stage.take(batches)) != END_OF_BATCHES) {
+            byte[] chunk = TopologyPersister.encodeLinks(batch);
+            if (targets.size() == 1) {
+                stage.put(targets.get(0).chunks, chunk);
+            } else {
+                awaitAnyTargetWithCapacity(targets, taken, stage);
+                for (Target target : targets) {
+                    target.offerOrSpill(chunk);
+                }
+            }
+            stage.items += batch.size();
+        }
+        for (Target target : targets) {
+            target.closeInput(); // never blocks, a target that isn't done yet must not hold back the others
+        }
+        stage.stop();
+    }
+
+    /**
+     * Backpressure comes from the fastest target: we only wait if no target can take the chunk right away, until a writer
+     * takes a chunk from its queue. The permits of earlier takes are dropped before the queues are checked, a take after
+     * the check still releases the wait.
+     */
+    private static void awaitAnyTargetWithCapacity(List<Target> targets, Semaphore taken, Stage stage) throws InterruptedException {
+        long begin = System.nanoTime();
+        while (true) {
+            taken.drainPermits();
+            for (Target target : targets) {
+                if (target.chunks.remainingCapacity() > 0) {
+                    stage.waitNanos += System.nanoTime() - begin;
+                    return;
+                }
+            }
+            taken.acquire();
+        }
+    }
+
+    /** Collects generated links into batches and hands them over to the serialize stage. */
+    private class BatchingSink implements Consumer<CdpLink> {
+        private final BlockingQueue<List<CdpLink>> batches;
+        private final Stage stage;
+        private List<CdpLink> batch = new ArrayList<>(batchSize);
+
+        private BatchingSink(BlockingQueue<List<CdpLink>> batches, Stage stage) {
+            this.batches = batches;
+            this.stage = stage;
+        }
+
+        @Override
+        public void accept(CdpLink link) {
+            batch.add(link);
+            if (batch.size() == batchSize) {
+                try {
+                    flush();
+                } catch (InterruptedException e) {
+                    // the LinkSource can't throw checked exceptions, an interrupt means another stage failed
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("generation of links was interrupted", e);
+                }
+            }
+        }
+
+        private void flush() throws InterruptedException {
+            if (!batch.isEmpty()) {
+                stage.put(batches, batch);
+                stage.items += batch.size();
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+    }
+
+    /**
+     * A database the links are written into, with its own queue and writer thread. Chunks that don't fit into the queue
+     * are appended to a spill file by the serialize thread, the writer reads them back after the queue is done.
+     */
+    private class Target {
+        private final int number;
+        private final TopologyPersister persister;
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(queueCapacity);
+        private final Stage stage;
+        private final Semaphore taken;
+        private final AtomicLong bytesWritten = new AtomicLong();
+        private final AtomicLong bytesSpilled = new AtomicLong();
+        private volatile boolean inputClosed;
+        private File spillFile;
+        private OutputStream spill;
+        private InputStream unspill;
+
+        private Target(int number, TopologyPersister persister, Semaphore taken) {
+            this.number = number;
+            this.persister = persister;
+            this.taken = taken;
+            this.stage = new Stage("write target " + number);
+        }
+
+        private void offerOrSpill(byte[] chunk) throws IOException {
+            if (!chunks.offer(chunk)) {
+                if (spill == null) {
+                    spillFile = File.createTempFile("topogen-target" + number + "-", ".copy", spillDirectory);
+                    spill = new BufferedOutputStream(new FileOutputStream(spillFile), SPILL_READ_SIZE);
+                    LOG.info("target {} falls behind, spilling to {}", number, spillFile);
+                }
+                spill.write(chunk);
+                bytesSpilled.addAndGet(chunk.length);
+            }
+        }
+
+        /**
+         * Marks the end of the chunks. The flag is set before the marker is offered: if the queue is full, the writer
+         * drains it and then sees the flag instead of the marker.
+         */
+        private void closeInput() throws IOException {
+            if (spill != null) {
+                spill.close();
+            }
+            inputClosed = true;
+            chunks.offer(END_OF_CHUNKS);
+        }
+
+        private void write(TargetPreparation preparation) throws InterruptedException, SQLException {
+            long begin = System.nanoTime();
+            preparation.prepare(persister);
+            LOG.debug("target {} prepared after {} ms", number, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+            stage.start();
+            persister.copyLinks(this::next);
+            stage.stop();
+        }
+
+        /** Chunks from the queue first, then the spilled ones. The COPY rows don't depend on the order. */
+        private byte[] next() throws InterruptedException {
+            byte[] chunk = END_OF_CHUNKS;
+            if (unspill == null) {
+                // read the flag before the queue: once it is set, all chunks are in the queue already
+                boolean closed = inputClosed;
+                chunk = chunks.poll();
+                if (chunk == null) {
+                    chunk = closed ? END_OF_CHUNKS : stage.take(chunks);
+                }
+                taken.release(); // wakes up the serialize stage if it waits for a free slot
+            }
+            if (chunk == END_OF_CHUNKS) {
+                chunk = readSpill();
+                if (chunk == null) {
+                    return null;
+                }
+            }
+            stage.items++;
+            bytesWritten.addAndGet(chunk.length);
+            return chunk;
+        }
+
+        private byte[] readSpill() {
+            if (spillFile == null) {
+                return null;
+            }
+            try {
+                if (unspill == null) {
+                    unspill = new BufferedInputStream(new FileInputStream(spillFile), SPILL_READ_SIZE);
+                }
+                byte[] buffer = new byte[SPILL_READ_SIZE];
+                int length = unspill.read(buffer);
+                if (length == -1) {
+                    return null;
+                }
+                return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException("can not read spill file " + spillFile, e);
+            }
+        }
+
+        private void deleteSpillFile() {
+            try {
+                if (spill != null) {
+                    spill.close();
+                }
+                if (unspill != null) {
+                    unspill.close();
+                }
+            } catch (IOException e) {
+                LOG.warn("can not close spill file {}", spillFile, e);
+            }
+            if (spillFile != null && !spillFile.delete()) {
+                LOG.warn("can not delete spill file {}", spillFile);
+            }
+        }
+    }
+
+    private static void logProgress(List<Target> targets) {
+        for (Target target : targets) {
+            LOG.info("target {}: {} MB written, {} MB spilled to disk",
+                    target.number, target.bytesWritten.get() >> 20, target.bytesSpilled.get() >> 20);
+        }
+    }
+
+    private static void report(long totalNanos, List<Stage> stages) {
+        Stage bottleneck = null;
+        for (Stage stage : stages) {
+            LOG.info("stage {} ({} threads): {} items, busy {} ms ({}%), waiting {} ms",
+                    stage.name,
+                    stage.threads,
+                    stage.items,
+                    TimeUnit.NANOSECONDS.toMillis(stage.busyNanos()),
+                    stage.utilization(totalNanos),
+                    TimeUnit.NANOSECONDS.toMillis(stage.waitNanos));
+            if (bottleneck == null || stage.utilization(totalNanos) > bottleneck.utilization(totalNanos)) {
+                bottleneck = stage;
+            }
+        }
+        LOG.info("pipeline done after {} ms, bottleneck: stage {}", TimeUnit.NANOSECONDS.toMillis(totalNanos), bottleneck.name);
+    }
+
+    /** Keeps track of the time a stage spends blocked on its queues, the rest of its runtime is busy time. */
+    private static class Stage {
+        private final String name;
+        private int threads = 1;
+        private long startNanos;
+        private long stopNanos;
+        private long waitNanos;
+        private long items;
+        private long mergedBusyNanos;
+
+        private Stage(String name) {
+            this.name = name;
+        }
+
+        private void start() {
+            startNanos = System.nanoTime();
+        }
+
+        private void stop() {
+            stopNanos = System.nanoTime();
+        }
+
+        private <T> void put(BlockingQueue<T> queue, T element) throws InterruptedException {
+            long begin = System.nanoTime();
+            queue.put(element);
+            waitNanos += System.nanoTime() - begin;
+        }
+
+        private <T> T take(BlockingQueue<T> queue) throws InterruptedException {
+            long begin = System.nanoTime();
+            T element = queue.take();
+            waitNanos += System.nanoTime() - begin;
+            return element;
+        }
+
+        private long busyNanos() {
+            return mergedBusyNanos + Math.max(0, stopNanos - startNanos - waitNanos);
+        }
+
+        /** busy time in percent of the time available to all threads of the stage */
+        private long utilization(long totalNanos) {
+            return totalNanos == 0 ? 0 : busyNanos() * 100 / (totalNanos * threads);
+        }
+
+        /** Sums up the stages of the threads that run the same stage in parallel. */
+        private static Stage merge(List<Stage> stages) {
+            Stage merged = new Stage(stages.get(0).name);
+            merged.threads = stages.size();
+            for (Stage stage : stages) {
+                merged.mergedBusyNanos += stage.busyNanos();
+                merged.waitNanos += stage.waitNanos;
+                merged.items += stage.items;
+            }
+            return merged;
+        }
+    }
+}
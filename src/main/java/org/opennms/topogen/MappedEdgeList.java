@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads an edge list in the {@link EdgeListFile} format through memory mapped windows of the file, so even edge lists
+ * of several GB are read without loading them onto the heap.
+ */
+public class MappedEdgeList implements Closeable {
+
+    private final static long WINDOW_SIZE = 1L << 30;
+
+    private final long windowSize;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int amountNodes;
+    private final long amountEdges;
+
+    private MappedByteBuffer window;
+    private long windowPosition;
+    private long edgesRead;
+    private int source;
+    private int target;
+
+    public MappedEdgeList(File file) throws IOException {
+        this(file, WINDOW_SIZE);
+    }
+
+    MappedEdgeList(File file, long windowSize) throws IOException {
+        this.windowSize = Math.max(windowSize, EdgeListFile.HEADER_SIZE);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        if (!EdgeListFile.isCompact(file)) {
+            channel.close();
+            throw new IOException("not an edge list in compact format: " + file);
+        }
+        map(0);
+        window.position(EdgeListFile.MAGIC.length);
+        byte version = window.get();
+        if (version != EdgeListFile.VERSION) {
+            channel.close();
+            throw new IOException(String.format("unsupported version %s of edge list %s", version, file));
+        }
+        this.amountNodes = window.getInt();
+        this.amountEdges = window.getLong();
+    }
+
+    public int getAmountNodes() {
+        return amountNodes;
+    }
+
+    public long getAmountEdges() {
+        return amountEdges;
+    }
+
+    /** Moves to the next edge, returns false at the end of the list. */
+    public boolean next() {
+        if (edgesRead == amountEdges) {
+            return false;
+        }
+        source += EdgeListFile.unzigzag(readVarint());
+        target = source + EdgeListFile.unzigzag(readVarint());
+        edgesRead++;
+        return true;
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    /** Starts again with the first edge. */
+    public void rewind() {
+        map(0);
+        window.position(EdgeListFile.HEADER_SIZE);
+        edgesRead = 0;
+        source = 0;
+        target = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = nextByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private byte nextByte() {
+        if (!window.hasRemaining()) {
+            map(windowPosition + window.limit());
+        }
+        return window.get();
+    }
+
+    private void map(long position) {
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, fileSize - position));
+            windowPosition = position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("can not map edge list at position " + position, e);
+        }
+    }
+}
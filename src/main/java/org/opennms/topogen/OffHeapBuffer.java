@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable byte storage outside of the heap, either in direct memory or in a memory mapped temporary file. It is made
+ * of fixed size segments that are allocated when first written; values must not cross a segment boundary. Reads use
+ * absolute positions only and are safe from several threads once writing is done.
+ */
+class OffHeapBuffer implements Closeable {
+
+    private final int segmentSize;
+    private final int segmentShift;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+
+    /** @param directory where to create the memory mapped file, null to use direct memory instead */
+    OffHeapBuffer(int segmentSize, File directory) throws IOException {
+        if (Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("segment size must be a power of 2 but was " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        if (directory == null) {
+            this.file = null;
+            this.randomAccessFile = null;
+        } else {
+            this.file = File.createTempFile("topogen-", ".staging", directory);
+            this.randomAccessFile = new RandomAccessFile(file, "rw");
+        }
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    void putInt(long position, int value) {
+        segmentForWrite(position).putInt(offset(position), value);
+    }
+
+    void putLong(long position, long value) {
+        segmentForWrite(position).putLong(offset(position), value);
+    }
+
+    void put(long position, byte[] bytes) {
+        ByteBuffer segment = segmentForWrite(position);
+        int offset = offset(position);
+        for (int i = 0; i < bytes.length; i++) {
+            segment.put(offset + i, bytes[i]);
+        }
+    }
+
+    int getInt(long position) {
+        return segment(position).getInt(offset(position));
+    }
+
+    long getLong(long position) {
+        return segment(position).getLong(offset(position));
+    }
+
+    void get(long position, byte[] destination, int length) {
+        ByteBuffer segment = segment(position);
+        int offset = offset(position);
+        for (int i = 0; i < length; i++) {
+            destination[i] = segment.get(offset + i);
+        }
+    }
+
+    /** Bytes left in the segment of the given position. */
+    int remainingInSegment(long position) {
+        return segmentSize - offset(position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        segments.clear();
+        if (randomAccessFile != null) {
+            randomAccessFile.close();
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private ByteBuffer segment(long position) {
+        return segments.get((int) (position >>> segmentShift));
+    }
+
+    private int offset(long position) {
+        return (int) (position & (segmentSize - 1));
+    }
+
+    private ByteBuffer segmentForWrite(long position) {
+        int index = (int) (position >>> segmentShift);
+        while (segments.size() <= index) {
+            if (randomAccessFile == null) {
+                segments.add(ByteBuffer.allocateDirect(segmentSize));
+            } else {
+                long start = (long) segments.size() * segmentSize;
+                try {
+                    segments.add(randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, start, segmentSize));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("can not map " + file + " at position " + start, e);
+                }
+            }
+        }
+        return segments.get(index);
+    }
+}
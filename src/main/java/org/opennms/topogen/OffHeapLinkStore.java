@@ -0,0 +1,272 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.opennms.netmgt.model.CdpLink;
+import org.opennms.netmgt.model.OnmsNode;
+
+/**
+ * Holds generated CdpLinks outside of the heap, one column per field. Strings are kept in an arena of
+ * [length][UTF-8 bytes] entries; the columns only store the arena position of their value. Values that repeat a lot
+ * (address, version, device id, platform) are stored once and shared through a dictionary, the interface names and
+ * ports are unique per link and stored as they come.
+ * Links are added by a single thread; once that is done the store can be read by several threads.
+ */
+class OffHeapLinkStore implements Closeable {
+
+    private final static int MIN_SEGMENT_SIZE = 1 << 16;
+    private final static int MAX_SEGMENT_SIZE = 1 << 26;
+    private final static int MAX_DICTIONARY_SIZE = 1 << 20;
+    private final static long NULL = -1;
+
+    private final OffHeapBuffer ids;
+    private final OffHeapBuffer nodeIds;
+    private final OffHeapBuffer ifIndexes;
+    private final OffHeapBuffer addressTypes;
+    private final OffHeapBuffer deviceIndexes;
+    private final OffHeapBuffer lastPollTimes;
+    private final OffHeapBuffer interfaceNames;
+    private final OffHeapBuffer addresses;
+    private final OffHeapBuffer versions;
+    private final OffHeapBuffer deviceIds;
+    private final OffHeapBuffer devicePorts;
+    private final OffHeapBuffer platforms;
+    private final OffHeapBuffer arena;
+
+    private final Map<String, Long> dictionary = new HashMap<>();
+    private long arenaSize;
+    private int size;
+
+    /**
+     * @param expectedLinks used to size the segments, the store grows beyond it if needed
+     * @param directory where to create memory mapped files, null to use direct memory instead
+     */
+    OffHeapLinkStore(int expectedLinks, File directory) throws IOException {
+        this(directory, segmentSize(expectedLinks));
+    }
+
+    /** @param segmentSize power of 2, bytes per segment of every column and of the arena */
+    OffHeapLinkStore(File directory, int segmentSize) throws IOException {
+        ids = new OffHeapBuffer(segmentSize, directory);
+        nodeIds = new OffHeapBuffer(segmentSize, directory);
+        ifIndexes = new OffHeapBuffer(segmentSize, directory);
+        addressTypes = new OffHeapBuffer(segmentSize, directory);
+        deviceIndexes = new OffHeapBuffer(segmentSize, directory);
+        lastPollTimes = new OffHeapBuffer(segmentSize, directory);
+        interfaceNames = new OffHeapBuffer(segmentSize, directory);
+        addresses = new OffHeapBuffer(segmentSize, directory);
+        versions = new OffHeapBuffer(segmentSize, directory);
+        deviceIds = new OffHeapBuffer(segmentSize, directory);
+        devicePorts = new OffHeapBuffer(segmentSize, directory);
+        platforms = new OffHeapBuffer(segmentSize, directory);
+        arena = new OffHeapBuffer(segmentSize, directory);
+    }
+
+    private static int segmentSize(int expectedLinks) {
+        long bytes = Math.max(1, (long) expectedLinks * Long.BYTES);
+        long segmentSize = Long.highestOneBit(bytes - 1) << 1;
+        return (int) Math.max(MIN_SEGMENT_SIZE, Math.min(MAX_SEGMENT_SIZE, segmentSize));
+    }
+
+    void add(CdpLink link) {
+        long intPosition = (long) size * Integer.BYTES;
+        long longPosition = (long) size * Long.BYTES;
+        ids.putInt(intPosition, link.getId());
+        nodeIds.putInt(intPosition, link.getNode().getId());
+        ifIndexes.putInt(intPosition, link.getCdpCacheIfIndex());
+        addressTypes.putInt(intPosition, link.getCdpCacheAddressType().ordinal());
+        deviceIndexes.putInt(intPosition, link.getCdpCacheDeviceIndex());
+        lastPollTimes.putLong(longPosition, link.getCdpLinkLastPollTime() == null ? NULL : link.getCdpLinkLastPollTime().getTime());
+        interfaceNames.putLong(longPosition, store(link.getCdpInterfaceName()));
+        addresses.putLong(longPosition, storeShared(link.getCdpCacheAddress()));
+        versions.putLong(longPosition, storeShared(link.getCdpCacheVersion()));
+        deviceIds.putLong(longPosition, storeShared(link.getCdpCacheDeviceId()));
+        devicePorts.putLong(longPosition, store(link.getCdpCacheDevicePort()));
+        platforms.putLong(longPosition, storeShared(link.getCdpCacheDevicePlatform()));
+        size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /** Bytes used by the string arena, the dictionary makes it grow slower than the amount of links. */
+    long getArenaSize() {
+        return arenaSize;
+    }
+
+    int getId(int index) {
+        return ids.getInt((long) index * Integer.BYTES);
+    }
+
+    int getNodeId(int index) {
+        return nodeIds.getInt((long) index * Integer.BYTES);
+    }
+
+    /** Appends the link at the given index as COPY row, same columns as {@link TopologyPersister#encodeLinks(List)}. */
+    void appendTo(CopyFormat row, int index, Date createTime, byte[] scratch) {
+        long intPosition = (long) index * Integer.BYTES;
+        long longPosition = (long) index * Long.BYTES;
+        row.add(ids.getInt(intPosition))
+                .add(nodeIds.getInt(intPosition))
+                .add(ifIndexes.getInt(intPosition));
+        appendString(row, interfaceNames.getLong(longPosition), scratch);
+        row.add(addressType(addressTypes.getInt(intPosition)).getValue());
+        appendString(row, addresses.getLong(longPosition), scratch);
+        appendString(row, versions.getLong(longPosition), scratch);
+        appendString(row, deviceIds.getLong(longPosition), scratch);
+        appendString(row, devicePorts.getLong(longPosition), scratch);
+        appendString(row, platforms.getLong(longPosition), scratch);
+        long lastPollTime = lastPollTimes.getLong(longPosition);
+        if (lastPollTime == NULL) {
+            row.addNull();
+        } else {
+            row.addTimestamp(lastPollTime);
+        }
+        row.add(deviceIndexes.getInt(intPosition))
+                .add(createTime)
+                .endRow();
+    }
+
+    /** Reads the link at the given index back into a new CdpLink, its node only carries the id. */
+    CdpLink get(int index) {
+        long intPosition = (long) index * Integer.BYTES;
+        long longPosition = (long) index * Long.BYTES;
+        CdpLink link = new CdpLink();
+        link.setId(ids.getInt(intPosition));
+        OnmsNode node = new OnmsNode();
+        node.setId(nodeIds.getInt(intPosition));
+        link.setNode(node);
+        link.setCdpCacheIfIndex(ifIndexes.getInt(intPosition));
+        link.setCdpInterfaceName(readString(interfaceNames.getLong(longPosition)));
+        link.setCdpCacheAddressType(addressType(addressTypes.getInt(intPosition)));
+        link.setCdpCacheAddress(readString(addresses.getLong(longPosition)));
+        link.setCdpCacheVersion(readString(versions.getLong(longPosition)));
+        link.setCdpCacheDeviceId(readString(deviceIds.getLong(longPosition)));
+        link.setCdpCacheDevicePort(readString(devicePorts.getLong(longPosition)));
+        link.setCdpCacheDevicePlatform(readString(platforms.getLong(longPosition)));
+        long lastPollTime = lastPollTimes.getLong(longPosition);
+        link.setCdpLinkLastPollTime(lastPollTime == NULL ? null : new Date(lastPollTime));
+        link.setCdpCacheDeviceIndex(deviceIndexes.getInt(intPosition));
+        return link;
+    }
+
+    /** A read only view that materializes one CdpLink per call of get(), for code that needs the heap objects. */
+    List<CdpLink> asList() {
+        return new AbstractList<CdpLink>() {
+            @Override
+            public CdpLink get(int index) {
+                return OffHeapLinkStore.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (OffHeapBuffer buffer : new OffHeapBuffer[]{ids, nodeIds, ifIndexes, addressTypes, deviceIndexes, lastPollTimes,
+                interfaceNames, addresses, versions, deviceIds, devicePorts, platforms, arena}) {
+            buffer.close();
+        }
+        dictionary.clear();
+    }
+
+    private static CdpLink.CiscoNetworkProtocolType addressType(int ordinal) {
+        return CdpLink.CiscoNetworkProtocolType.values()[ordinal];
+    }
+
+    private long storeShared(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Long position = dictionary.get(value);
+        if (position != null) {
+            return position;
+        }
+        long stored = store(value);
+        if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+            dictionary.put(value, stored);
+        }
+        return stored;
+    }
+
+    private long store(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        int entrySize = Integer.BYTES + utf8.length;
+        if (entrySize > arena.getSegmentSize()) {
+            throw new IllegalArgumentException("string of " + utf8.length + " bytes doesn't fit into a segment of " + arena.getSegmentSize());
+        }
+        if (arena.remainingInSegment(arenaSize) < entrySize) {
+            arenaSize += arena.remainingInSegment(arenaSize); // entries don't cross segments
+        }
+        long position = arenaSize;
+        arena.putInt(position, utf8.length);
+        arena.put(position + Integer.BYTES, utf8);
+        arenaSize += entrySize;
+        return position;
+    }
+
+    private String readString(long position) {
+        if (position == NULL) {
+            return null;
+        }
+        int length = arena.getInt(position);
+        byte[] utf8 = new byte[length];
+        arena.get(position + Integer.BYTES, utf8, length);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    private void appendString(CopyFormat row, long position, byte[] scratch) {
+        if (position == NULL) {
+            row.addNull();
+            return;
+        }
+        int length = arena.getInt(position);
+        byte[] utf8 = length <= scratch.length ? scratch : new byte[length];
+        arena.get(position + Integer.BYTES, utf8, length);
+        row.addUtf8(utf8, 0, length);
+    }
+}
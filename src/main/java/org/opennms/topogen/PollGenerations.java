@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spreads the last poll times of the CdpLinks over several poll generations, like Enlinkd leaves them behind after
+ * polling for a while: every link that was seen in the latest poll of its node has the latest poll time, the stale
+ * ones still carry the time of an older generation. The generations are evenly spread over the poll window. Which
+ * links are stale depends on the link id only, so it is the same in every run.
+ */
+class PollGenerations {
+
+    private final int stalePercent;
+    private final Date[] pollTimes; // index 0 is the latest generation
+
+    PollGenerations(int generations, long windowMinutes, int stalePercent, long latestPollTime) {
+        if (generations < 1) {
+            throw new IllegalArgumentException("we need at least 1 poll generation but found " + generations);
+        }
+        if (stalePercent < 0 || stalePercent > 100) {
+            throw new IllegalArgumentException("we need a stale percentage between 0 and 100 but found " + stalePercent);
+        }
+        if (stalePercent > 0 && generations < 2) {
+            throw new IllegalArgumentException("stale links need at least 2 poll generations but found " + generations);
+        }
+        if (stalePercent == 0 && generations > 1) {
+            // only stale links carry the time of an older generation, without them the generations would go unused
+            throw new IllegalArgumentException("older poll generations need stale links but found " + generations + " generations and 0% stale links");
+        }
+        if (windowMinutes < 0) {
+            throw new IllegalArgumentException("we need a poll window of at least 0 minutes but found " + windowMinutes);
+        }
+        this.stalePercent = stalePercent;
+        this.pollTimes = new Date[generations];
+        long windowMillis = TimeUnit.MINUTES.toMillis(windowMinutes);
+        for (int generation = 0; generation < generations; generation++) {
+            long age = generations == 1 ? 0 : windowMillis * generation / (generations - 1);
+            pollTimes[generation] = new Date(latestPollTime - age);
+        }
+    }
+
+    Date getLatestPollTime() {
+        return pollTimes[0];
+    }
+
+    /** The poll time of the link pair that starts with the given link id, both links of a pair are polled together. */
+    Date getLastPollTime(int firstLinkId) {
+        if (stalePercent == 0) {
+            return pollTimes[0];
+        }
+        long hash = mix(firstLinkId);
+        if (Long.remainderUnsigned(hash, 100) >= stalePercent) {
+            return pollTimes[0];
+        }
+        return pollTimes[1 + (int) Long.remainderUnsigned(mix(hash), pollTimes.length - 1)];
+    }
+
+    /** Finalizer of SplitMix64, spreads consecutive ids evenly. */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Order independent checksums of the rows of one table, per range of ids: the amount of rows and the sum of their
+ * hashes (modulo 2^64). Rows can be added in any order and partial checksums merged.
+ */
+class RangeChecksums {
+
+    private final int rangeSize;
+    private final SortedMap<Integer, long[]> ranges = new TreeMap<>(); // range -> {amount of rows, sum of hashes}
+
+    RangeChecksums(int rangeSize) {
+        this.rangeSize = rangeSize;
+    }
+
+    void add(int id, long hash) {
+        long[] checksum = ranges.computeIfAbsent(id / rangeSize, range -> new long[2]); // same as the integer division in SQL
+        checksum[0]++;
+        checksum[1] += hash;
+    }
+
+    void put(int range, long amountRows, long sumOfHashes) {
+        ranges.put(range, new long[]{amountRows, sumOfHashes});
+    }
+
+    void merge(RangeChecksums other) {
+        for (Map.Entry<Integer, long[]> entry : other.ranges.entrySet()) {
+            long[] checksum = ranges.computeIfAbsent(entry.getKey(), range -> new long[2]);
+            checksum[0] += entry.getValue()[0];
+            checksum[1] += entry.getValue()[1];
+        }
+    }
+
+    long getAmountRows() {
+        long amountRows = 0;
+        for (long[] checksum : ranges.values()) {
+            amountRows += checksum[0];
+        }
+        return amountRows;
+    }
+
+    /** Describes every range of ids in which the actual rows differ from the expected ones (this). */
+    List<String> compare(RangeChecksums actual, String table) {
+        SortedMap<Integer, long[]> all = new TreeMap<>(ranges);
+        all.putAll(actual.ranges);
+        List<String> mismatches = new ArrayList<>();
+        for (Integer range : all.keySet()) {
+            long[] expectedChecksum = ranges.getOrDefault(range, new long[2]);
+            long[] actualChecksum = actual.ranges.getOrDefault(range, new long[2]);
+            if (expectedChecksum[0] != actualChecksum[0] || expectedChecksum[1] != actualChecksum[1]) {
+                mismatches.add(String.format("%s ids [%s, %s): expected %s rows with checksum %016x, found %s rows with checksum %016x",
+                        table, (long) range * rangeSize, (long) (range + 1) * rangeSize,
+                        expectedChecksum[0], expectedChecksum[1], actualChecksum[0], actualChecksum[1]));
+            }
+        }
+        return mismatches;
+    }
+}
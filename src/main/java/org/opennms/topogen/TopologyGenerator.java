@@ -30,12 +30,26 @@ package org.opennms.topogen;
 
 import static org.kohsuke.args4j.OptionHandlerFilter.ALL;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.kohsuke.args4j.CmdLineException;
@@ -59,30 +73,105 @@ public class TopologyGenerator {
         ring, random, complete
     }
 
-    private TopologyPersister persister;
+    private enum Persist{
+        batch, pipeline, staged
+    }
+
+    private final static int PIPELINE_BATCH_SIZE = 1000;
+    private final static int PIPELINE_QUEUE_CAPACITY = 16;
+    private final static int VERIFY_RANGE_SIZE = 100_000;
+    private final static long INTERFACE_NAME_PREFIX = 0x746f706f67656eL;
+
+    private List<TopologyPersister> persisters;
+    @Option(name="--db-url",usage="JDBC url of the OpenNMS database, repeat it to write the same topology into several databases concurrently, default = jdbc:postgresql://localhost:5432/opennms")
+    private List<String> dbUrls = new ArrayList<>();
+    @Option(name="--db-user",usage="user of the OpenNMS database, default = opennms")
+    private String dbUser = "opennms";
+    @Option(name="--db-password",usage="password of the OpenNMS database, default = opennms")
+    private String dbPassword = "opennms";
     @Option(name="--nodes",usage="generate <N> OmnsNodes")
+    @Setter
     private int amountNodes = 10;
     @Option(name="--elements",usage="generate <N> CdpElements")
     private int amountElements = -1;
     @Option(name="--links",usage="generate <N> CdpLinks")
+    @Setter
     private int amountLinks = -1;
     @Option(name="--topology",usage="type of topology (complete | ring | random), default = random")
     @Setter
     private String topology = "random";
+    @Option(name="--persist",usage="how to persist the CdpLinks (batch | pipeline | staged), pipeline generates and writes them concurrently, staged generates all of them off heap first and copies them afterwards, default = pipeline")
+    @Setter
+    private String persist = "pipeline";
+    @Option(name="--staging-dir",usage="keep the CdpLinks of --persist batch and staged in memory mapped files in <dir> instead of direct memory (limited by -XX:MaxDirectMemorySize), also used for the edges kept for --stats, for the chunks --persist pipeline spills for a target database that falls behind and for converted edge lists that can't be written next to the --edges file")
+    @Setter
+    private File stagingDir;
     @Option(name="--delete",usage="delete existing toplogogy (all OnmsNodes, CdpElements and CdpLinks)")
     private boolean deleteExistingTolology = false;
+    @Option(name="--spec",usage="generate a composite topology of segments and interconnects described in a JSON or YAML <file>, replaces --nodes, --elements, --links and --topology")
+    @Setter
+    private File specFile;
+    @Option(name="--edges",usage="import the topology from an edge list <file>, either text (one \"source target\" pair per line, converted to <file>.tgel once) or converted before, replaces --nodes, --elements and --topology")
+    @Setter
+    private File edgesFile;
+    @Option(name="--scale",usage="replicate the imported edge list <N> times, default = 1")
+    @Setter
+    private int scale = 1;
+    @Option(name="--rewire",usage="connect <N> percent of the imported links to a random node of any replica instead, default = 0")
+    private int rewirePercent = 0;
+    @Option(name="--threads",usage="amount of threads generating the segments of a --spec topology in parallel, in every --persist mode, default = amount of processors")
+    @Setter
+    private int generatorThreads = Runtime.getRuntime().availableProcessors();
+    @Option(name="--verify",usage="don't write anything but check that the database contains exactly the topology described by the other options, reports the ranges of ids that differ")
+    @Setter
+    private boolean verify = false;
+    @Option(name="--generations",usage="spread the last poll times of the CdpLinks over <N> poll generations, needs --stale, default = 1")
+    @Setter
+    private int pollGenerations = 1;
+    @Option(name="--poll-window",usage="the poll generations are spread over the last <N> minutes, default = 1440")
+    @Setter
+    private int pollWindowMinutes = 24 * 60;
+    @Option(name="--stale",usage="<N> percent of the CdpLinks are stale: they belong to an older poll generation than their node, default = 0")
+    @Setter
+    private int stalePercent = 0;
+    @Option(name="--cleanup",usage="don't write anything but measure the cleanup of stale CdpLinks that Enlinkd runs after polling a node, it is rolled back afterwards")
+    @Setter
+    private boolean cleanup = false;
+    @Option(name="--stats",usage="write statistics of the generated topology (degree histogram, components, duplicate edges, diameter) to <file>")
+    private File statisticsFile;
+
+    private TopologySpec spec;
+    private MappedEdgeList edgeList;
+    private GraphStatistics statistics;
+    private PollGenerations pollTimes;
 
     public TopologyGenerator(TopologyPersister persister) throws IOException {
-        this.persister = persister;
+        this.persisters = persister == null ? Collections.emptyList() : Collections.singletonList(persister);
     }
 
     void assertSetup() {
+        if(specFile != null && edgesFile != null){
+            throw new IllegalArgumentException("--spec and --edges can't be combined");
+        }
+        if(verify && deleteExistingTolology){
+            throw new IllegalArgumentException("--verify and --delete can't be combined");
+        }
+        if(cleanup && (verify || deleteExistingTolology)){
+            throw new IllegalArgumentException("--cleanup can't be combined with --verify or --delete");
+        }
+        if(specFile != null){
+            readSpec();
+        }
+        if(edgesFile != null){
+            openEdgeList();
+        }
         if(amountElements == -1){
             amountElements = amountNodes;
         }
         if(amountLinks == -1){
             amountLinks = (amountElements * amountElements)-amountElements;
         }
+        amountLinks = TopologySpec.roundUpToPairs(amountLinks); // what is actually written
         // do basic checks to get configuration right:
         assertMoreOrEqualsThan("we need at least as many nodes as elements", amountElements, amountNodes);
         assertMoreOrEqualsThan("we need at least 2 nodes", 2, amountNodes);
@@ -90,8 +179,50 @@ public class TopologyGenerator {
         assertMoreOrEqualsThan("we need at least 1 link", 1, amountLinks);
 
         Topology.valueOf(topology); // check if valid parameter
+        Persist.valueOf(persist); // check if valid parameter
+        assertMoreOrEqualsThan("we need at least 1 thread", 1, generatorThreads);
+        pollTimes = new PollGenerations(pollGenerations, pollWindowMinutes, stalePercent, System.currentTimeMillis());
     }
 
+    private void readSpec() {
+        try {
+            spec = TopologySpec.read(specFile);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("can not read topology spec " + specFile, e);
+        }
+        spec.assertValid();
+        for (TopologySpec.Segment segment : spec.getSegments()) {
+            Topology.valueOf(segment.getTopology()); // check if valid parameter
+        }
+        amountNodes = spec.getAmountNodes();
+        amountElements = amountNodes;
+        amountLinks = spec.getAmountLinks();
+    }
+
+
+    private void openEdgeList() {
+        assertMoreOrEqualsThan("we need a scale of at least 1", 1, scale);
+        if(rewirePercent < 0 || rewirePercent > 100){
+            throw new IllegalArgumentException("we need a rewire percentage between 0 and 100 but found " + rewirePercent);
+        }
+        try {
+            File fallbackDirectory = stagingDir != null ? stagingDir : new File(System.getProperty("java.io.tmpdir"));
+            edgeList = new MappedEdgeList(EdgeListFile.toCompact(edgesFile, fallbackDirectory));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("can not read edge list " + edgesFile, e);
+        }
+        try {
+            amountNodes = Math.multiplyExact(edgeList.getAmountNodes(), scale);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException(String.format("we can't create %s replicas of %s nodes, that's more than %s nodes",
+                    scale, edgeList.getAmountNodes(), Integer.MAX_VALUE), e);
+        }
+        amountElements = amountNodes;
+        if(amountLinks == -1){
+            // every edge of every replica once, each edge becomes 2 links
+            amountLinks = (int) Math.min(Integer.MAX_VALUE - 1, 2 * edgeList.getAmountEdges() * scale);
+        }
+    }
 
     private void doMain(String[] args) {
         CmdLineParser parser = new CmdLineParser(this);
@@ -115,28 +246,192 @@ public class TopologyGenerator {
 
 
     public static void main(String args[]) throws Exception {
-        TopologyGenerator generator = new TopologyGenerator(new TopologyPersister());
+        TopologyGenerator generator = new TopologyGenerator(null);
         generator.doMain(args);
         generator.assertSetup();
-        generator.createCdpNetwork();
+        if(generator.dbUrls.isEmpty()){
+            generator.dbUrls.add("jdbc:postgresql://localhost:5432/opennms");
+        }
+        List<TopologyPersister> persisters = new ArrayList<>();
+        for (String dbUrl : generator.dbUrls) {
+            LOG.info("target {}: {}", persisters.size() + 1, dbUrl);
+            persisters.add(new TopologyPersister(dbUrl, generator.dbUser, generator.dbPassword));
+        }
+        generator.persisters = persisters;
+        if(generator.verify){
+            generator.verifyCdpNetwork();
+        } else if(generator.cleanup){
+            generator.measureCleanup();
+        } else {
+            generator.createCdpNetwork();
+        }
     }
 
-    private void createCdpNetwork() throws SQLException {
-        if(deleteExistingTolology){
-            deleteExistingToplogy();
+    void createCdpNetwork() throws SQLException, IOException {
+        for (TopologyPersister persister : persisters) {
+            if(!Persist.batch.name().equals(persist) && !persister.supportsCopy()){
+                throw new IllegalArgumentException("--persist " + persist + " needs a PostgreSQL database, use --persist batch instead");
+            }
         }
         LOG.info("creating {} topology with {} {}s, {} {}s and {} {}s.",
-                this.topology,
+                spec != null ? "composite" : edgeList != null ? "imported" : this.topology,
                 this.amountNodes, OnmsNode.class.getSimpleName() ,
                 this.amountElements, CdpElement.class.getSimpleName(),
                 this.amountLinks, CdpLink.class.getSimpleName());
+        if(stalePercent > 0){
+            LOG.info("{}% of the {}s are stale, spread over {} poll generations within {} minutes.",
+                    stalePercent, CdpLink.class.getSimpleName(), pollGenerations, pollWindowMinutes);
+        }
         OnmsMonitoringLocation location = createMonitoringLocation();
         List<OnmsNode> nodes = createNodes(location);
-        persister.persistNodes(nodes);
         List<CdpElement> cdpElements = createCdpElements(nodes);
-        persister.persistElements(cdpElements);
-        List<CdpLink> links = createCdpLinks(cdpElements);
-        persister.persistLinks(links);
+        // every target runs its own chain, a fast target doesn't wait for the nodes and elements of a slow one
+        PersisterTask prepareTarget = persister -> {
+            if(deleteExistingTolology){
+                persister.deleteTopology();
+            }
+            persister.persistNodes(nodes);
+            persister.persistElements(cdpElements);
+        };
+        if(statisticsFile != null){
+            statistics = new GraphStatistics(amountElements, stagingDir);
+        }
+        try {
+            List<LinkPipeline.LinkSource> sources = createLinkSources(cdpElements);
+            if(Persist.pipeline.name().equals(persist)){
+                new LinkPipeline(persisters, PIPELINE_BATCH_SIZE, PIPELINE_QUEUE_CAPACITY, generatorThreads, stagingDir)
+                        .run(sources, prepareTarget::run);
+            } else {
+                try (OffHeapLinkStore links = stageLinks(sources)) {
+                    if(Persist.staged.name().equals(persist)){
+                        forAllPersisters(persister -> {
+                            prepareTarget.run(persister);
+                            persister.copyLinks(links);
+                        });
+                    } else {
+                        forAllPersisters(persister -> {
+                            prepareTarget.run(persister);
+                            persister.persistLinks(links.asList());
+                        });
+                    }
+                }
+            }
+            if(statistics != null){
+                writeStatistics();
+            }
+        } finally {
+            if(statistics != null){
+                statistics.close();
+            }
+        }
+        if(edgeList != null){
+            edgeList.close();
+        }
+    }
+
+    /**
+     * Generates all links into an off heap store, so that even huge link sets don't need to live on the heap. The sources
+     * are generated in parallel like in the pipeline, the links are added to the store in batches.
+     */
+    private OffHeapLinkStore stageLinks(List<LinkPipeline.LinkSource> sources) throws IOException, SQLException {
+        OffHeapLinkStore links = new OffHeapLinkStore(amountLinks, stagingDir);
+        int threads = Math.max(1, Math.min(generatorThreads, sources.size()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            AtomicInteger nextSource = new AtomicInteger();
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    List<CdpLink> batch = new ArrayList<>(PIPELINE_BATCH_SIZE);
+                    Consumer<CdpLink> sink = link -> {
+                        batch.add(link);
+                        if (batch.size() == PIPELINE_BATCH_SIZE) {
+                            addAll(links, batch);
+                        }
+                    };
+                    int index;
+                    while ((index = nextSource.getAndIncrement()) < sources.size()) {
+                        sources.get(index).generate(sink);
+                    }
+                    addAll(links, batch);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            links.close();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while staging the links", e);
+        } catch (ExecutionException e) {
+            links.close();
+            throw LinkPipeline.rethrow(e);
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.info("staged {} {}s, {} bytes of strings", links.size(), CdpLink.class.getSimpleName(), links.getArenaSize());
+        return links;
+    }
+
+    /** The store isn't thread safe, the generator threads add their batches one after another. */
+    private static void addAll(OffHeapLinkStore links, List<CdpLink> batch) {
+        synchronized (links) {
+            for (CdpLink link : batch) {
+                links.add(link);
+            }
+        }
+        batch.clear();
+    }
+
+    void measureCleanup() throws SQLException {
+        forAllPersisters(TopologyPersister::measureCleanup);
+    }
+
+    /** Generates the topology again without persisting it and compares checksums of it with the ones of the databases. */
+    void verifyCdpNetwork() throws SQLException, IOException {
+        LOG.info("verifying {} topology with {} {}s, {} {}s and {} {}s.",
+                spec != null ? "composite" : edgeList != null ? "imported" : this.topology,
+                this.amountNodes, OnmsNode.class.getSimpleName() ,
+                this.amountElements, CdpElement.class.getSimpleName(),
+                this.amountLinks, CdpLink.class.getSimpleName());
+        List<OnmsNode> nodes = createNodes(createMonitoringLocation());
+        List<CdpElement> cdpElements = createCdpElements(nodes);
+        TopologyVerifier verifier = new TopologyVerifier(VERIFY_RANGE_SIZE, generatorThreads);
+        Map<ChecksumDialect, Map<String, RangeChecksums>> expected = new HashMap<>();
+        for (TopologyPersister persister : persisters) {
+            ChecksumDialect dialect = persister.getChecksumDialect();
+            if(!expected.containsKey(dialect)){
+                expected.put(dialect, verifier.expected(dialect, nodes, cdpElements, createLinkSources(cdpElements)));
+            }
+        }
+        if(edgeList != null){
+            edgeList.close();
+        }
+        Map<TopologyPersister, List<String>> mismatches = new ConcurrentHashMap<>();
+        forAllPersisters(persister -> mismatches.put(persister,
+                verifier.verify(persister, expected.get(persister.getChecksumDialect()))));
+        int amountMismatches = 0;
+        for (int i = 0; i < persisters.size(); i++) {
+            for (String mismatch : mismatches.get(persisters.get(i))) {
+                LOG.warn("target {}: {}", i + 1, mismatch);
+                amountMismatches++;
+            }
+        }
+        if(amountMismatches > 0){
+            throw new IllegalStateException("verification failed, " + amountMismatches + " ranges of ids differ");
+        }
+        LOG.info("verification done, all ranges of ids match");
+    }
+
+    private void writeStatistics() throws IOException {
+        StringWriter report = new StringWriter();
+        statistics.write(report);
+        LOG.info("statistics of the generated topology:{}{}", System.lineSeparator(), report);
+        try (Writer out = new FileWriter(statisticsFile)) {
+            out.write(report.toString());
+        }
+        LOG.info("statistics written to {}", statisticsFile.getAbsolutePath());
     }
 
     private OnmsMonitoringLocation createMonitoringLocation() {
@@ -179,43 +474,99 @@ public class TopologyGenerator {
         cdpElement.setNode(node);
         cdpElement.setCdpGlobalDeviceId("CdpElementForNode" + node.getId());
         cdpElement.setCdpGlobalRun(OspfElement.TruthValue.FALSE);
-        cdpElement.setCdpNodeLastPollTime(new Date());
+        cdpElement.setCdpNodeLastPollTime(pollTimes.getLatestPollTime());
         return cdpElement;
     }
 
-    private List<CdpLink> createCdpLinks(List<CdpElement> cdpElements) {
-        PairGenerator<CdpElement> pairs = createPairGenerator(cdpElements);
-        List<CdpLink> links = new ArrayList<>();
+    private List<LinkPipeline.LinkSource> createLinkSources(List<CdpElement> cdpElements) {
+        if(spec != null){
+            return createLinkSources(spec, cdpElements);
+        } else if(edgeList != null){
+            return Collections.singletonList(sink -> createCdpLinks(
+                    new EdgeListPairGenerator<>(cdpElements, edgeList, scale, rewirePercent), amountLinks, 0, sink));
+        }
+        return Collections.singletonList(sink -> createCdpLinks(createPairGenerator(topology, cdpElements), amountLinks, 0, sink));
+    }
+
+    /**
+     * One LinkSource per segment and per interconnect. Nodes and links get consecutive id ranges in the order of the spec,
+     * so the ids don't depend on the order in which the sources are run.
+     */
+    private List<LinkPipeline.LinkSource> createLinkSources(TopologySpec spec, List<CdpElement> cdpElements) {
+        List<LinkPipeline.LinkSource> sources = new ArrayList<>();
+        Map<String, List<CdpElement>> elementsBySegment = new HashMap<>();
+        int firstElement = 0;
+        int firstLinkId = 0;
+        for (TopologySpec.Segment segment : spec.getSegments()) {
+            List<CdpElement> segmentElements = cdpElements.subList(firstElement, firstElement + segment.getNodes());
+            elementsBySegment.put(segment.getName(), segmentElements);
+            int segmentFirstLinkId = firstLinkId;
+            sources.add(sink -> createCdpLinks(createPairGenerator(segment.getTopology(), segmentElements),
+                    segment.getLinks(), segmentFirstLinkId, sink));
+            firstElement += segment.getNodes();
+            firstLinkId += segment.getLinks();
+        }
+        List<TopologySpec.Interconnect> interconnects = spec.getInterconnects();
+        for (int index = 0; index < interconnects.size(); index++) {
+            TopologySpec.Interconnect interconnect = interconnects.get(index);
+            List<CdpElement> fromElements = elementsBySegment.get(interconnect.getFrom());
+            List<CdpElement> toElements = elementsBySegment.get(interconnect.getTo());
+            int interconnectFirstLinkId = firstLinkId;
+            // a seed per interconnect: interconnects between segments of the same size must not pick the same endpoints
+            long seed = 42 ^ (index + 1) * 0x9E3779B97F4A7C15L;
+            sources.add(sink -> createCdpLinks(new BipartitePairGenerator<>(fromElements, toElements, seed),
+                    interconnect.getLinks(), interconnectFirstLinkId, sink));
+            firstLinkId += interconnect.getLinks();
+        }
+        return sources;
+    }
+
+    private void createCdpLinks(PairGenerator<CdpElement> pairs, int amountLinks, int firstLinkId, Consumer<CdpLink> links) {
+        // every source collects its own edges, segments may be generated in parallel
+        GraphStatistics.Collector edges = statistics == null ? null : statistics.collector();
         for (int i = 0; i < amountLinks; i++) {
 
             // We create 2 links that reference each other, see also LinkdToplologyProvider.matchCdpLinks()
             Pair<CdpElement, CdpElement> pair = pairs.next();
             CdpElement sourceCdpElement = pair.getLeft();
             CdpElement targetCdpElement = pair.getRight();
-            CdpLink sourceLink = createCdpLink(i++,
+            if(edges != null){
+                edges.addEdge(sourceCdpElement.getId(), targetCdpElement.getId());
+            }
+            int sourceLinkId = firstLinkId + i++;
+            CdpLink sourceLink = createCdpLink(sourceLinkId,
                     sourceCdpElement.getNode(),
-                    UUID.randomUUID().toString(),
-                    UUID.randomUUID().toString(),
-                    targetCdpElement.getCdpGlobalDeviceId()
+                    createInterfaceName(sourceLinkId),
+                    createInterfaceName(sourceLinkId + 1),
+                    targetCdpElement.getCdpGlobalDeviceId(),
+                    pollTimes.getLastPollTime(sourceLinkId)
             );
-            links.add(sourceLink);
+            links.accept(sourceLink);
 
             String targetCdpCacheDevicePort = sourceLink.getCdpInterfaceName();
             String targetCdpInterfaceName = sourceLink.getCdpCacheDevicePort();
             String targetCdpGlobalDeviceId = sourceCdpElement.getCdpGlobalDeviceId();
-            CdpLink targetLink = createCdpLink(i,
+            CdpLink targetLink = createCdpLink(firstLinkId + i,
                     targetCdpElement.getNode(),
                     targetCdpInterfaceName,
                     targetCdpCacheDevicePort,
-                    targetCdpGlobalDeviceId
+                    targetCdpGlobalDeviceId,
+                    sourceLink.getCdpLinkLastPollTime()
                     );
-            links.add(targetLink);
+            links.accept(targetLink);
             LOG.debug("Linked node {} with node {}", sourceCdpElement.getNode().getLabel(), targetCdpElement.getNode().getLabel());
         }
-        return links;
+        if(edges != null){
+            edges.flush();
+        }
+    }
+
+    /** Unique per link like a random UUID but the same in every run, so that --verify can generate the links again. */
+    private static String createInterfaceName(int linkId) {
+        return new UUID(INTERFACE_NAME_PREFIX, linkId).toString();
     }
 
-    private PairGenerator<CdpElement> createPairGenerator(List<CdpElement> elements){
+    private PairGenerator<CdpElement> createPairGenerator(String topology, List<CdpElement> elements){
         if(Topology.complete.name().equals(topology)){
             return new UndirectedPairGenerator<>(elements);
         } else if(Topology.ring.name().equals(topology)) {
@@ -228,7 +579,7 @@ public class TopologyGenerator {
     }
 
     private CdpLink createCdpLink(int id, OnmsNode node, String cdpInterfaceName, String cdpCacheDevicePort,
-                                  String cdpCacheDeviceId) {
+                                  String cdpCacheDeviceId, Date lastPollTime) {
         CdpLink link = new CdpLink();
         link.setId(id);
         link.setCdpCacheDeviceId(cdpCacheDeviceId);
@@ -241,12 +592,45 @@ public class TopologyGenerator {
         link.setCdpCacheDevicePlatform("CdpCacheDevicePlatform");
         link.setCdpCacheIfIndex(33);
         link.setCdpCacheVersion("CdpCacheVersion");
-        link.setCdpLinkLastPollTime(new Date());
+        link.setCdpLinkLastPollTime(lastPollTime);
         return link;
     }
 
 
     public void deleteExistingToplogy() throws SQLException {
-        this.persister.deleteTopology();
+        forAllPersisters(TopologyPersister::deleteTopology);
+    }
+
+    @FunctionalInterface
+    private interface PersisterTask {
+        void run(TopologyPersister persister) throws SQLException;
+    }
+
+    /** Runs the task for every target database, concurrently if there is more than one. */
+    private void forAllPersisters(PersisterTask task) throws SQLException {
+        if(persisters.size() == 1){
+            task.run(persisters.get(0));
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(persisters.size());
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (TopologyPersister persister : persisters) {
+                futures.add(executor.submit(() -> {
+                    task.run(persister);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the target databases", e);
+        } catch (ExecutionException e) {
+            throw LinkPipeline.rethrow(e);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 }
\ No newline at end of file
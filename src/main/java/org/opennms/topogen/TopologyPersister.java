@@ -28,17 +28,23 @@
 
 package org.opennms.topogen;
 
-import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.sql.DataSource;
 
 import org.opennms.netmgt.model.CdpElement;
 import org.opennms.netmgt.model.CdpLink;
 import org.opennms.netmgt.model.OnmsNode;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -52,25 +58,44 @@ public class TopologyPersister {
     private final static String ELEMENTS_INSERT = "INSERT INTO cdpelement (id, nodeid, cdpglobalrun, cdpglobaldeviceid, cdpnodelastpolltime, cdpnodecreatetime) VALUES (?, ?, ?, ?, ?, now());";
     private final static String ELEMENTS_DELETE = "delete from cdpelement;";
     private final static String LINKS_INSERT = "INSERT INTO cdplink (id, nodeid, cdpcacheifindex, cdpinterfacename, cdpcacheaddresstype, cdpcacheaddress, cdpcacheversion, cdpcachedeviceid, cdpcachedeviceport, cdpcachedeviceplatform, cdplinklastpolltime, cdpcachedeviceindex, cdplinkcreatetime) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, now());";
+    final static String LINKS_COPY_COLUMNS = "id, nodeid, cdpcacheifindex, cdpinterfacename, cdpcacheaddresstype, cdpcacheaddress, cdpcacheversion, cdpcachedeviceid, cdpcachedeviceport, cdpcachedeviceplatform, cdplinklastpolltime, cdpcachedeviceindex, cdplinkcreatetime";
+    private final static String LINKS_COPY = "COPY cdplink (" + LINKS_COPY_COLUMNS + ") FROM STDIN";
     private final static String LINKS_DELETE = "delete from cdplink;";
+    private final static String STALE_LINKS_COUNT = "SELECT COUNT(*) FROM cdplink l JOIN cdpelement e ON e.nodeid = l.nodeid WHERE l.cdplinklastpolltime < e.cdpnodelastpolltime";
+    private final static String ELEMENTS_POLL_TIMES = "SELECT nodeid, cdpnodelastpolltime FROM cdpelement";
+    private final static String NODE_LINKS_CLEANUP = "DELETE FROM cdplink WHERE nodeid = ? AND cdplinklastpolltime < ?"; // CdpLinkDao.deleteByNodeIdOlderThen()
+
+    private final static int BATCH_SIZE = 100;
+    private final static int COPY_CHUNK_SIZE = 1000;
 
     private final static Logger LOG = LoggerFactory.getLogger(TopologyPersister.class);
 
-    private DataSource ds;
+    private final DataSource ds;
+
+    TopologyPersister(String jdbcUrl, String user, String password) {
+        this(createDataSource(jdbcUrl, user, password));
+    }
 
-    TopologyPersister() throws IOException {
-        setUpDatasource();
+    TopologyPersister(DataSource ds) {
+        this.ds = ds;
     }
 
-    public void setUpDatasource() {
+    private static DataSource createDataSource(String jdbcUrl, String user, String password) {
         HikariConfig config = new HikariConfig();
-        config.setJdbcUrl("jdbc:postgresql://localhost:5432/opennms");
-        config.setUsername("opennms");
-        config.setPassword("opennms");
-        config.addDataSourceProperty("cachePrepStmts", "true");
-        config.addDataSourceProperty("prepStmtCacheSize", "250");
-        config.addDataSourceProperty("prepStmtCacheSqlLimit", "2048");
-        ds = new HikariDataSource(config);
+        config.setJdbcUrl(jdbcUrl);
+        config.setUsername(user);
+        config.setPassword(password);
+        if (jdbcUrl.startsWith("jdbc:postgresql:")) {
+            config.addDataSourceProperty("reWriteBatchedInserts", "true"); // sends a batch as multi row inserts
+        }
+        return new HikariDataSource(config);
+    }
+
+    /** COPY (used by the pipeline) is only available for PostgreSQL. */
+    public boolean supportsCopy() throws SQLException {
+        try (Connection c = ds.getConnection()) {
+            return c.isWrapperFor(PGConnection.class);
+        }
     }
 
 
@@ -93,7 +118,7 @@ public class TopologyPersister {
                 stmt.setInt(2, element.getNode().getId());
                 stmt.setInt(3, element.getCdpGlobalRun().getValue());
                 stmt.setString(4, element.getCdpGlobalDeviceId());
-                stmt.setDate(5, new java.sql.Date(element.getCdpNodeLastPollTime().getTime()));
+                stmt.setTimestamp(5, new Timestamp(element.getCdpNodeLastPollTime().getTime()));
             }
         });
     }
@@ -113,17 +138,171 @@ public class TopologyPersister {
                 stmt.setString(i++, link.getCdpCacheDeviceId());
                 stmt.setString(i++, link.getCdpCacheDevicePort());
                 stmt.setString(i++, link.getCdpCacheDevicePlatform());
-                stmt.setDate(i++, new java.sql.Date(link.getCdpLinkLastPollTime().getTime()));
+                stmt.setTimestamp(i++, new Timestamp(link.getCdpLinkLastPollTime().getTime()));
                 stmt.setInt(i, link.getCdpCacheDeviceIndex());
             }
         });
     }
 
+    /** Serializes the links into the COPY text format, same columns as {@link #persistLinks(List)}. */
+    public static byte[] encodeLinks(List<CdpLink> links) {
+        CopyFormat row = new CopyFormat(links.size() * 256);
+        Date now = new Date();
+        for (CdpLink link : links) {
+            row.add(link.getId())
+                    .add(link.getNode().getId())
+                    .add(link.getCdpCacheIfIndex())
+                    .add(link.getCdpInterfaceName())
+                    .add(link.getCdpCacheAddressType().getValue())
+                    .add(link.getCdpCacheAddress())
+                    .add(link.getCdpCacheVersion())
+                    .add(link.getCdpCacheDeviceId())
+                    .add(link.getCdpCacheDevicePort())
+                    .add(link.getCdpCacheDevicePlatform())
+                    .add(link.getCdpLinkLastPollTime())
+                    .add(link.getCdpCacheDeviceIndex())
+                    .add(now)
+                    .endRow();
+        }
+        return row.toByteArray();
+    }
+
+    /** Serializes the links [from, to) of the store into the COPY text format without creating CdpLink objects. */
+    public static byte[] encodeLinks(OffHeapLinkStore links, int from, int to) {
+        CopyFormat row = new CopyFormat((to - from) * 256);
+        Date now = new Date();
+        byte[] scratch = new byte[256];
+        for (int i = from; i < to; i++) {
+            links.appendTo(row, i, now, scratch);
+        }
+        return row.toByteArray();
+    }
+
+    /** Copies all links of the store into the cdplink table, encoding them chunk by chunk. */
+    public void copyLinks(OffHeapLinkStore links) throws SQLException {
+        int[] next = {0};
+        try {
+            copyLinks(() -> {
+                if (next[0] >= links.size()) {
+                    return null;
+                }
+                int from = next[0];
+                next[0] = Math.min(links.size(), from + COPY_CHUNK_SIZE);
+                return encodeLinks(links, from, next[0]);
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while copying links", e);
+        }
+    }
+
+    /** Streams chunks created by {@link #encodeLinks(List)} into the cdplink table until the source returns null. */
+    public void copyLinks(SupplierWithException<byte[]> chunks) throws SQLException, InterruptedException {
+        try (Connection c = ds.getConnection()) {
+            CopyIn copyIn = c.unwrap(PGConnection.class).getCopyAPI().copyIn(LINKS_COPY);
+            try {
+                byte[] chunk;
+                while ((chunk = chunks.get()) != null) {
+                    copyIn.writeToCopy(chunk, 0, chunk.length);
+                }
+                long rows = copyIn.endCopy();
+                LOG.info("copying of {} CdpLinks done.", rows);
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the cleanup Enlinkd runs after the CDP poll of a node, which deletes the links of the node that were
+     * not seen in that poll. It runs for every node in one transaction that is rolled back afterwards, so that the
+     * measurement can be repeated on the same data. Returns the amount of deleted CdpLinks.
+     */
+    public long measureCleanup() throws SQLException {
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try {
+                long start = System.nanoTime();
+                long staleLinks;
+                try (PreparedStatement stmt = c.prepareStatement(STALE_LINKS_COUNT);
+                     ResultSet result = stmt.executeQuery()) {
+                    result.next();
+                    staleLinks = result.getLong(1);
+                }
+                LOG.info("counted {} stale CdpLinks in {} ms", staleLinks, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+                List<Integer> nodeIds = new ArrayList<>();
+                List<Timestamp> pollTimes = new ArrayList<>();
+                try (PreparedStatement stmt = c.prepareStatement(ELEMENTS_POLL_TIMES);
+                     ResultSet result = stmt.executeQuery()) {
+                    while (result.next()) {
+                        nodeIds.add(result.getInt(1));
+                        pollTimes.add(result.getTimestamp(2));
+                    }
+                }
+                long deletedLinks = 0;
+                long slowestNanos = 0;
+                start = System.nanoTime();
+                try (PreparedStatement stmt = c.prepareStatement(NODE_LINKS_CLEANUP)) {
+                    for (int i = 0; i < nodeIds.size(); i++) {
+                        long nodeStart = System.nanoTime();
+                        stmt.setInt(1, nodeIds.get(i));
+                        stmt.setTimestamp(2, pollTimes.get(i));
+                        deletedLinks += stmt.executeUpdate();
+                        slowestNanos = Math.max(slowestNanos, System.nanoTime() - nodeStart);
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                LOG.info("cleanup of {} nodes deleted {} CdpLinks in {} ms, {} us per node on average and {} us at most",
+                        nodeIds.size(), deletedLinks, TimeUnit.NANOSECONDS.toMillis(nanos),
+                        nodeIds.isEmpty() ? 0 : TimeUnit.NANOSECONDS.toMicros(nanos / nodeIds.size()),
+                        TimeUnit.NANOSECONDS.toMicros(slowestNanos));
+                return deletedLinks;
+            } finally {
+                c.rollback();
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    public ChecksumDialect getChecksumDialect() throws SQLException {
+        try (Connection c = ds.getConnection()) {
+            return ChecksumDialect.of(c);
+        }
+    }
+
+    /**
+     * Checksums of the given columns per range of ids, computed by the database so that no rows need to be transferred.
+     * The first column is the id.
+     */
+    public RangeChecksums checksums(String table, String[] columns, int rangeSize) throws SQLException {
+        try (Connection c = ds.getConnection()) {
+            String query = String.format("SELECT id_range, COUNT(*), SUM(row_hash) FROM (SELECT %s / %s AS id_range, %s AS row_hash FROM %s) AS hashed GROUP BY id_range",
+                    columns[0], rangeSize, ChecksumDialect.of(c).hashSql(columns), table);
+            RangeChecksums checksums = new RangeChecksums(rangeSize);
+            try (PreparedStatement stmt = c.prepareStatement(query);
+                 ResultSet result = stmt.executeQuery()) {
+                while (result.next()) {
+                    // the sum exceeds a bigint, its lower 64 bits are the sum modulo 2^64
+                    checksums.put(result.getInt(1), result.getLong(2), result.getBigDecimal(3).toBigInteger().longValue());
+                }
+            }
+            return checksums;
+        }
+    }
+
     @FunctionalInterface
     public interface BiConsumerWithException<T, R> {
         void accept(T t, R r) throws SQLException;
     }
 
+    @FunctionalInterface
+    public interface SupplierWithException<T> {
+        T get() throws InterruptedException;
+    }
+
     private <T> void batchInsert(String statement, List<T> elements, BiConsumerWithException<PreparedStatement, T> statementFiller) throws SQLException {
         if(elements.size()==0){
             return;
@@ -135,13 +314,12 @@ public class TopologyPersister {
                 for (i = 0; i < elements.size(); i++) {
                     T element = elements.get(i);
                     statementFiller.accept(insStmt, element);
-                    insStmt.executeUpdate();
-                    insStmt.getGeneratedKeys();
-                    if (i % 100 == 0) { // batches of 100
+                    insStmt.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
                         insStmt.executeBatch();
                     }
                 }
-                if (i % 100 != 0) {
+                if (i % BATCH_SIZE != 0) {
                     insStmt.executeBatch(); // insert last elements of batch
                 }
             }
@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+
+import lombok.Data;
+
+/**
+ * Describes a topology composed of segments (e.g. a full mesh core, distribution rings and random access layers) and
+ * the interconnects between them. Read from a JSON or YAML (*.yml, *.yaml) file:
+ * <pre>
+ * segments:
+ *   - {name: core, topology: complete, nodes: 10, links: 90}
+ *   - {name: access, topology: random, nodes: 1000, links: 4000}
+ * interconnects:
+ *   - {from: core, to: access, links: 200}
+ * </pre>
+ */
+@Data
+public class TopologySpec {
+
+    private List<Segment> segments = new ArrayList<>();
+    private List<Interconnect> interconnects = new ArrayList<>();
+
+    @Data
+    public static class Segment {
+        private String name;
+        private String topology = "random";
+        private int nodes;
+        private int links = -1;
+    }
+
+    @Data
+    public static class Interconnect {
+        private String from;
+        private String to;
+        private int links;
+    }
+
+    public static TopologySpec read(File file) throws IOException {
+        String name = file.getName().toLowerCase();
+        ObjectMapper mapper = name.endsWith(".yml") || name.endsWith(".yaml")
+                ? new ObjectMapper(new YAMLFactory())
+                : new ObjectMapper();
+        mapper.enable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        return mapper.readValue(file, TopologySpec.class);
+    }
+
+    public Segment getSegment(String name) {
+        for (Segment segment : segments) {
+            if (segment.getName().equals(name)) {
+                return segment;
+            }
+        }
+        throw new IllegalArgumentException("unknown segment: " + name);
+    }
+
+    public int getAmountNodes() {
+        int amount = 0;
+        for (Segment segment : segments) {
+            amount += segment.getNodes();
+        }
+        return amount;
+    }
+
+    public int getAmountLinks() {
+        int amount = 0;
+        for (Segment segment : segments) {
+            amount += segment.getLinks();
+        }
+        for (Interconnect interconnect : interconnects) {
+            amount += interconnect.getLinks();
+        }
+        return amount;
+    }
+
+    void assertValid() {
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("we need at least 1 segment");
+        }
+        Set<String> names = new HashSet<>();
+        for (Segment segment : segments) {
+            if (segment.getName() == null || !names.add(segment.getName())) {
+                throw new IllegalArgumentException("every segment needs a unique name, found: " + segment.getName());
+            }
+            if (segment.getNodes() < 2) {
+                throw new IllegalArgumentException("we need at least 2 nodes in segment " + segment.getName());
+            }
+            if (segment.getLinks() == -1) {
+                segment.setLinks(segment.getNodes() * segment.getNodes() - segment.getNodes());
+            }
+            if (segment.getLinks() < 1) {
+                throw new IllegalArgumentException("we need at least 1 link in segment " + segment.getName());
+            }
+            segment.setLinks(roundUpToPairs(segment.getLinks()));
+        }
+        for (Interconnect interconnect : interconnects) {
+            Segment from = getSegment(interconnect.getFrom());
+            Segment to = getSegment(interconnect.getTo());
+            if (from == to) {
+                throw new IllegalArgumentException("an interconnect needs 2 different segments, found: " + from.getName());
+            }
+            if (interconnect.getLinks() < 1) {
+                throw new IllegalArgumentException("we need at least 1 link between " + from.getName() + " and " + to.getName());
+            }
+            interconnect.setLinks(roundUpToPairs(interconnect.getLinks()));
+        }
+    }
+
+    /** links are created in pairs that reference each other, an odd amount is rounded up */
+    static int roundUpToPairs(int amountLinks) {
+        return amountLinks + amountLinks % 2;
+    }
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import org.opennms.netmgt.model.CdpElement;
+import org.opennms.netmgt.model.CdpLink;
+import org.opennms.netmgt.model.OnmsNode;
+
+/**
+ * Checks that a database contains exactly the topology the generator would write without reading the rows back: the
+ * expected rows are generated again and hashed in parallel, the database computes the same checksums per range of
+ * ids with aggregate queries. Timestamps are not compared since they are the time of generation.
+ */
+class TopologyVerifier {
+
+    final static String NODE_TABLE = "node";
+    final static String ELEMENT_TABLE = "cdpelement";
+    final static String LINK_TABLE = "cdplink";
+
+    private final static String[] NODE_COLUMNS = {"nodeid", "nodelabel", "location"};
+    private final static String[] ELEMENT_COLUMNS = {"id", "nodeid", "cdpglobalrun", "cdpglobaldeviceid"};
+    private final static String[] LINK_COLUMNS = {"id", "nodeid", "cdpcacheifindex", "cdpinterfacename", "cdpcacheaddresstype",
+            "cdpcacheaddress", "cdpcacheversion", "cdpcachedeviceid", "cdpcachedeviceport", "cdpcachedeviceplatform", "cdpcachedeviceindex"};
+
+    private final static int BATCH_SIZE = 1000;
+
+    private final int rangeSize;
+    private final int threads;
+
+    TopologyVerifier(int rangeSize, int threads) {
+        this.rangeSize = rangeSize;
+        this.threads = threads;
+    }
+
+    /** Generates the links of all sources and hashes all rows in parallel, nothing is persisted. */
+    Map<String, RangeChecksums> expected(ChecksumDialect dialect, List<OnmsNode> nodes, List<CdpElement> elements,
+                                         List<LinkPipeline.LinkSource> sources) {
+        Map<String, RangeChecksums> expected = new LinkedHashMap<>();
+        expected.put(NODE_TABLE, new RangeChecksums(rangeSize));
+        expected.put(ELEMENT_TABLE, new RangeChecksums(rangeSize));
+        expected.put(LINK_TABLE, new RangeChecksums(rangeSize));
+
+        ExecutorService hashers = Executors.newFixedThreadPool(threads);
+        ExecutorService generators = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sources.size())));
+        Semaphore pendingBatches = new Semaphore(threads * 4); // generators wait instead of piling up batches
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try {
+            Hasher hasher = new Hasher(dialect, hashers, pendingBatches, failure);
+            for (int i = 0; i < nodes.size(); i += BATCH_SIZE) {
+                hasher.submit(nodes.subList(i, Math.min(nodes.size(), i + BATCH_SIZE)), TopologyVerifier::values, expected.get(NODE_TABLE));
+            }
+            for (int i = 0; i < elements.size(); i += BATCH_SIZE) {
+                hasher.submit(elements.subList(i, Math.min(elements.size(), i + BATCH_SIZE)), TopologyVerifier::values, expected.get(ELEMENT_TABLE));
+            }
+            List<Future<?>> generated = new ArrayList<>();
+            for (LinkPipeline.LinkSource source : sources) {
+                generated.add(generators.submit(() -> {
+                    List<CdpLink> batch = new ArrayList<>(BATCH_SIZE);
+                    source.generate(link -> {
+                        batch.add(link);
+                        if (batch.size() == BATCH_SIZE) {
+                            hasher.submit(new ArrayList<>(batch), TopologyVerifier::values, expected.get(LINK_TABLE));
+                            batch.clear();
+                        }
+                    });
+                    hasher.submit(batch, TopologyVerifier::values, expected.get(LINK_TABLE));
+                }));
+            }
+            for (Future<?> future : generated) {
+                future.get();
+            }
+            hashers.shutdown();
+            hashers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while generating the expected topology", e);
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        } finally {
+            generators.shutdownNow();
+            hashers.shutdownNow();
+        }
+        if (failure.get() instanceof RuntimeException) {
+            throw (RuntimeException) failure.get();
+        } else if (failure.get() != null) {
+            throw new IllegalStateException(failure.get());
+        }
+        return expected;
+    }
+
+    /** Queries the checksums of all tables concurrently and describes every range of ids that differs. */
+    List<String> verify(TopologyPersister persister, Map<String, RangeChecksums> expected) throws SQLException {
+        Map<String, String[]> columns = new LinkedHashMap<>();
+        columns.put(NODE_TABLE, NODE_COLUMNS);
+        columns.put(ELEMENT_TABLE, ELEMENT_COLUMNS);
+        columns.put(LINK_TABLE, LINK_COLUMNS);
+        ExecutorService executor = Executors.newFixedThreadPool(columns.size());
+        try {
+            Map<String, Future<RangeChecksums>> actual = new LinkedHashMap<>();
+            for (Map.Entry<String, String[]> table : columns.entrySet()) {
+                actual.put(table.getKey(), executor.submit(() -> persister.checksums(table.getKey(), table.getValue(), rangeSize)));
+            }
+            List<String> mismatches = new ArrayList<>();
+            for (Map.Entry<String, Future<RangeChecksums>> table : actual.entrySet()) {
+                mismatches.addAll(expected.get(table.getKey()).compare(table.getValue().get(), table.getKey()));
+            }
+            return mismatches;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while computing checksums", e);
+        } catch (ExecutionException e) {
+            throw LinkPipeline.rethrow(e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Object[] values(OnmsNode node) {
+        return new Object[]{node.getId(), node.getLabel(), node.getLocation().getLocationName()};
+    }
+
+    private static Object[] values(CdpElement element) {
+        return new Object[]{element.getId(), element.getNode().getId(), element.getCdpGlobalRun().getValue(),
+                element.getCdpGlobalDeviceId()};
+    }
+
+    private static Object[] values(CdpLink link) {
+        return new Object[]{link.getId(), link.getNode().getId(), link.getCdpCacheIfIndex(), link.getCdpInterfaceName(),
+                link.getCdpCacheAddressType().getValue(), link.getCdpCacheAddress(), link.getCdpCacheVersion(),
+                link.getCdpCacheDeviceId(), link.getCdpCacheDevicePort(), link.getCdpCacheDevicePlatform(),
+                link.getCdpCacheDeviceIndex()};
+    }
+
+    /** Hashes batches of rows on the hasher threads, the first failure is kept and reported after all are done. */
+    private class Hasher {
+
+        private final ChecksumDialect dialect;
+        private final ExecutorService executor;
+        private final Semaphore pendingBatches;
+        private final AtomicReference<Throwable> failure;
+
+        private Hasher(ChecksumDialect dialect, ExecutorService executor, Semaphore pendingBatches, AtomicReference<Throwable> failure) {
+            this.dialect = dialect;
+            this.executor = executor;
+            this.pendingBatches = pendingBatches;
+            this.failure = failure;
+        }
+
+        private <T> void submit(List<T> rows, Function<T, Object[]> columns, RangeChecksums checksums) {
+            try {
+                pendingBatches.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for the hashers", e);
+            }
+            executor.execute(() -> {
+                try {
+                    RangeChecksums batch = new RangeChecksums(rangeSize);
+                    for (T row : rows) {
+                        Object[] values = columns.apply(row);
+                        batch.add((Integer) values[0], dialect.hash(values));
+                    }
+                    synchronized (checksums) {
+                        checksums.merge(batch);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    pendingBatches.release();
+                }
+            });
+        }
+    }
+}
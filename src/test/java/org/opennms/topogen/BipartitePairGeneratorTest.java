@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+public class BipartitePairGeneratorTest {
+
+    @Test
+    void shouldRejectEmptyLists() {
+        assertThrows(IllegalArgumentException.class, () -> new BipartitePairGenerator<>(null, Arrays.asList("1")));
+        assertThrows(IllegalArgumentException.class, () -> new BipartitePairGenerator<>(Arrays.asList("1"), Collections.emptyList()));
+    }
+
+    @Test
+    void shouldPairLeftElementsWithRightElements() {
+        List<String> left = Arrays.asList("l1", "l2", "l3");
+        List<String> right = Arrays.asList("r1", "r2");
+        BipartitePairGenerator<String> generator = new BipartitePairGenerator<>(left, right);
+        for (int i = 0; i < 20; i++) {
+            Pair<String, String> pair = generator.next();
+            assertTrue(left.contains(pair.getLeft()));
+            assertTrue(right.contains(pair.getRight()));
+        }
+    }
+
+    @Test
+    void shouldPickEndpointsBySeed() {
+        List<Integer> left = new ArrayList<>();
+        List<Integer> right = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            left.add(i);
+            right.add(i);
+        }
+        assertEquals(pairs(new BipartitePairGenerator<>(left, right, 1)), pairs(new BipartitePairGenerator<>(left, right, 1)));
+        assertNotEquals(pairs(new BipartitePairGenerator<>(left, right, 1)), pairs(new BipartitePairGenerator<>(left, right, 2)));
+    }
+
+    private static List<Pair<Integer, Integer>> pairs(BipartitePairGenerator<Integer> generator) {
+        List<Pair<Integer, Integer>> pairs = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            pairs.add(generator.next());
+        }
+        return pairs;
+    }
+}
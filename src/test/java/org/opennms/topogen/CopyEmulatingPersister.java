@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collections;
+
+import javax.sql.DataSource;
+
+/**
+ * Persister for databases without COPY (H2): parses the COPY text chunks of the pipeline and the staged links and
+ * inserts the rows in batches, all in one transaction like a COPY. Everything else is left to the real persister, so
+ * that the COPY based persistence modes can be tested offline.
+ */
+class CopyEmulatingPersister extends TopologyPersister {
+
+    private final static int AMOUNT_COLUMNS = TopologyPersister.LINKS_COPY_COLUMNS.split(",").length;
+    private final static String LINKS_INSERT = "INSERT INTO cdplink (" + TopologyPersister.LINKS_COPY_COLUMNS + ") VALUES ("
+            + String.join(", ", Collections.nCopies(AMOUNT_COLUMNS, "?")) + ")";
+    private final static int BATCH_SIZE = 1000;
+
+    private final DataSource ds;
+
+    CopyEmulatingPersister(DataSource ds) {
+        super(ds);
+        this.ds = ds;
+    }
+
+    @Override
+    public boolean supportsCopy() {
+        return true;
+    }
+
+    @Override
+    public void copyLinks(SupplierWithException<byte[]> chunks) throws SQLException, InterruptedException {
+        try (Connection c = ds.getConnection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement stmt = c.prepareStatement(LINKS_INSERT)) {
+                ByteArrayOutputStream row = new ByteArrayOutputStream();
+                long rows = 0;
+                byte[] chunk;
+                while ((chunk = chunks.get()) != null) {
+                    for (byte b : chunk) {
+                        if (b != '\n') {
+                            row.write(b); // rows may be split between chunks, e.g. when read back from a spill file
+                            continue;
+                        }
+                        addRow(stmt, new String(row.toByteArray(), StandardCharsets.UTF_8));
+                        row.reset();
+                        if (++rows % BATCH_SIZE == 0) {
+                            stmt.executeBatch();
+                        }
+                    }
+                }
+                if (row.size() > 0) {
+                    throw new SQLException("COPY data ends within a row: " + new String(row.toByteArray(), StandardCharsets.UTF_8));
+                }
+                stmt.executeBatch();
+                c.commit();
+            } catch (SQLException | InterruptedException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
+            }
+        }
+    }
+
+    private static void addRow(PreparedStatement stmt, String row) throws SQLException {
+        String[] columns = row.split("\t", -1);
+        if (columns.length != AMOUNT_COLUMNS) {
+            throw new SQLException(String.format("expected %s columns but found %s in row: %s", AMOUNT_COLUMNS, columns.length, row));
+        }
+        for (int i = 0; i < columns.length; i++) {
+            stmt.setString(i + 1, "\\N".equals(columns[i]) ? null : unescape(columns[i]));
+        }
+        stmt.addBatch();
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') == -1) {
+            return value;
+        }
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char escaped = value.charAt(++i);
+                switch (escaped) {
+                    case 't': result.append('\t'); break;
+                    case 'n': result.append('\n'); break;
+                    case 'r': result.append('\r'); break;
+                    default: result.append(escaped);
+                }
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
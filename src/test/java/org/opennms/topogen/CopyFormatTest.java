@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class CopyFormatTest {
+
+    @Test
+    void shouldSeparateColumnsAndRows() {
+        CopyFormat rows = new CopyFormat(0);
+        rows.add(1).add("a").endRow();
+        rows.add(2).add("b").endRow();
+        assertEquals("1\ta\n2\tb\n", asString(rows));
+    }
+
+    @Test
+    void shouldEscapeSpecialCharacters() {
+        CopyFormat rows = new CopyFormat(0);
+        rows.add("tab\tnewline\nreturn\rbackslash\\").endRow();
+        assertEquals("tab\\tnewline\\nreturn\\rbackslash\\\\\n", asString(rows));
+    }
+
+    @Test
+    void shouldWriteNulls() {
+        CopyFormat rows = new CopyFormat(0);
+        rows.add((String) null).add(3).endRow();
+        assertEquals("\\N\t3\n", asString(rows));
+    }
+
+    @Test
+    void shouldEncodeUtf8() {
+        CopyFormat rows = new CopyFormat(0);
+        rows.add("Z\u00fcrich\t").endRow();
+        byte[] utf8 = "Gen\u00e8ve".getBytes(StandardCharsets.UTF_8);
+        rows.addUtf8(utf8, 0, utf8.length).endRow();
+        assertEquals("Z\u00fcrich\\t\nGen\u00e8ve\n", asString(rows));
+    }
+
+    private static String asString(CopyFormat rows) {
+        return new String(rows.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+public class EdgeListPairGeneratorTest {
+
+    private final List<String> elements = Arrays.asList("a1", "b1", "c1", "a2", "b2", "c2");
+
+    @Test
+    void shouldRejectTooFewElements() throws IOException {
+        try (MappedEdgeList edges = new MappedEdgeList(MappedEdgeListTest.convert("1 2\n2 3\n"))) {
+            assertThrows(IllegalArgumentException.class, () -> new EdgeListPairGenerator<>(elements.subList(0, 2), edges, 1, 0));
+            assertThrows(IllegalArgumentException.class, () -> new EdgeListPairGenerator<>(elements, edges, 3, 0));
+            assertThrows(IllegalArgumentException.class, () -> new EdgeListPairGenerator<>(elements, edges, 1, 101));
+        }
+    }
+
+    @Test
+    void shouldRejectScaleBeyondIntegerRange() throws IOException {
+        try (MappedEdgeList edges = new MappedEdgeList(MappedEdgeListTest.convert("1 2\n2 3\n"))) {
+            // 3 nodes * scale wraps around to a negative amount of nodes
+            assertThrows(IllegalArgumentException.class, () -> new EdgeListPairGenerator<>(elements, edges, Integer.MAX_VALUE / 2, 0));
+        }
+    }
+
+    @Test
+    void shouldReplicateEdgeList() throws IOException {
+        try (MappedEdgeList edges = new MappedEdgeList(MappedEdgeListTest.convert("1 2\n2 3\n"))) {
+            EdgeListPairGenerator<String> generator = new EdgeListPairGenerator<>(elements, edges, 2, 0);
+            assertEquals(Pair.of("a1", "b1"), generator.next());
+            assertEquals(Pair.of("b1", "c1"), generator.next());
+            assertEquals(Pair.of("a2", "b2"), generator.next());
+            assertEquals(Pair.of("b2", "c2"), generator.next());
+            // and it starts from the beginning again:
+            assertEquals(Pair.of("a1", "b1"), generator.next());
+        }
+    }
+
+    @Test
+    void shouldRewireEdges() throws IOException {
+        try (MappedEdgeList edges = new MappedEdgeList(MappedEdgeListTest.convert("1 2\n2 3\n"))) {
+            EdgeListPairGenerator<String> generator = new EdgeListPairGenerator<>(elements, edges, 2, 100);
+            for (int i = 0; i < 20; i++) {
+                Pair<String, String> pair = generator.next();
+                assertNotEquals(pair.getLeft(), pair.getRight());
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.jupiter.api.Test;
+
+public class GraphStatisticsTest {
+
+    @Test
+    void shouldDescribeARing() throws IOException {
+        List<Integer> nodes = Arrays.asList(0, 1, 2, 3, 4, 5);
+        try (GraphStatistics statistics = new GraphStatistics(nodes.size())) {
+            LinkedPairGenerator<Integer> ring = new LinkedPairGenerator<>(nodes);
+            for (int i = 0; i < nodes.size(); i++) {
+                Pair<Integer, Integer> pair = ring.next();
+                statistics.addEdge(pair.getLeft(), pair.getRight());
+            }
+            assertEquals(6, statistics.getEdges());
+            assertEquals(1, statistics.getComponents());
+            assertEquals(0.0, statistics.getDuplicateRatio());
+            assertEquals(3, statistics.getDiameterEstimate());
+            assertEquals(1, statistics.getDegreeHistogram().size());
+            assertEquals(6, statistics.getDegreeHistogram().get(2).intValue());
+        }
+    }
+
+    @Test
+    void shouldCountComponentsAndDuplicates() throws IOException {
+        try (GraphStatistics statistics = new GraphStatistics(5)) {
+            statistics.addEdge(0, 1);
+            statistics.addEdge(1, 0);
+            statistics.addEdge(2, 3);
+            statistics.addEdge(2, 3);
+            assertEquals(3, statistics.getComponents()); // {0,1}, {2,3}, {4}
+            assertEquals(0.5, statistics.getDuplicateRatio());
+            assertEquals(1, statistics.getDegreeHistogram().get(0).intValue());
+        }
+    }
+
+    @Test
+    void shouldCountDuplicatesOfSparseGraphsExactly() throws IOException {
+        try (GraphStatistics statistics = new GraphStatistics(20_000)) {
+            assertEquals(countDistinctRandomEdges(statistics, 20_000, 80_000), 80_000 - Math.round(statistics.getDuplicateRatio() * 80_000));
+        }
+    }
+
+    @Test
+    void shouldCountDuplicatesExactlyAcrossSortRuns() throws IOException {
+        File directory = Files.createTempDirectory("topogen").toFile();
+        try (GraphStatistics statistics = new GraphStatistics(5_000, directory, 1000)) { // 80 runs in a memory mapped file
+            assertEquals(countDistinctRandomEdges(statistics, 5_000, 80_000), 80_000 - Math.round(statistics.getDuplicateRatio() * 80_000));
+            assertTrue(statistics.getDiameterEstimate() > 0);
+        } finally {
+            directory.delete();
+        }
+        assertEquals(0, directory.exists() ? directory.list().length : 0, "the memory mapped files are deleted");
+    }
+
+    @Test
+    void shouldEstimateDiameterOfLargeGraphs() throws IOException {
+        try (GraphStatistics statistics = new GraphStatistics(3_000_001)) {
+            for (int i = 0; i < 3_000_000; i++) {
+                statistics.addEdge(i, i + 1);
+            }
+            assertEquals(3_000_000, statistics.getDiameterEstimate()); // double sweeps find the diameter of a path
+            assertEquals(0.0, statistics.getDuplicateRatio());
+        }
+    }
+
+    @Test
+    void shouldCollectEdgesOfSeveralGenerators() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (GraphStatistics all = new GraphStatistics(1000); GraphStatistics collected = new GraphStatistics(1000)) {
+            Random random = new Random(42);
+            List<List<int[]>> parts = new ArrayList<>();
+            for (int part = 0; part < 4; part++) {
+                List<int[]> edges = new ArrayList<>();
+                for (int i = 0; i < 100_000; i++) {
+                    int[] edge = {random.nextInt(800), random.nextInt(800)}; // 200 nodes stay unconnected
+                    all.addEdge(edge[0], edge[1]);
+                    edges.add(edge);
+                }
+                parts.add(edges);
+            }
+            List<Future<?>> futures = new ArrayList<>();
+            for (List<int[]> edges : parts) {
+                futures.add(executor.submit(() -> {
+                    GraphStatistics.Collector collector = collected.collector();
+                    for (int[] edge : edges) {
+                        collector.addEdge(edge[0], edge[1]);
+                    }
+                    collector.flush();
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertEquals(all.getEdges(), collected.getEdges());
+            assertEquals(all.getComponents(), collected.getComponents());
+            assertEquals(all.getDuplicateRatio(), collected.getDuplicateRatio());
+            assertEquals(all.getDegreeHistogram(), collected.getDegreeHistogram());
+            assertEquals(all.getDiameterEstimate(), collected.getDiameterEstimate());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldWriteReport() throws IOException {
+        try (GraphStatistics statistics = new GraphStatistics(3)) {
+            statistics.addEdge(0, 1);
+            statistics.addEdge(1, 0);
+            StringWriter report = new StringWriter();
+            statistics.write(report);
+            assertTrue(report.toString().contains("(1 duplicates)"), report.toString());
+            assertTrue(report.toString().contains("diameter estimate: 1 "), report.toString());
+        }
+    }
+
+    /** Adds random edges, returns how many of them are distinct. */
+    private static int countDistinctRandomEdges(GraphStatistics statistics, int nodes, int edges) {
+        Set<Long> distinct = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < edges; i++) {
+            int source = random.nextInt(nodes);
+            int target = random.nextInt(nodes);
+            statistics.addEdge(source, target);
+            distinct.add(((long) Math.min(source, target) << 32) | Math.max(source, target));
+        }
+        return distinct.size();
+    }
+}
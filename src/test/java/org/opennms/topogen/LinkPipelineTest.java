@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.opennms.netmgt.model.CdpLink;
+import org.opennms.netmgt.model.OnmsNode;
+
+public class LinkPipelineTest {
+
+    /** Collects the ids of the COPY rows instead of writing them into a database. */
+    private static class CollectingPersister extends TopologyPersister {
+        private final Set<Integer> ids = new HashSet<>();
+        private final long delayPerChunkMillis;
+
+        private CollectingPersister() {
+            this(0);
+        }
+
+        private CollectingPersister(long delayPerChunkMillis) {
+            super((DataSource) null);
+            this.delayPerChunkMillis = delayPerChunkMillis;
+        }
+
+        @Override
+        public void copyLinks(SupplierWithException<byte[]> chunks) throws InterruptedException {
+            byte[] chunk;
+            while ((chunk = chunks.get()) != null) {
+                Thread.sleep(delayPerChunkMillis);
+                for (String row : new String(chunk, StandardCharsets.UTF_8).split("\n")) {
+                    ids.add(Integer.parseInt(row.substring(0, row.indexOf('\t'))));
+                }
+            }
+        }
+    }
+
+    @Test
+    void shouldWriteAllLinksOfAllSources() throws SQLException {
+        CollectingPersister persister = new CollectingPersister();
+        new LinkPipeline(persister, 7, 2, 3).run(Arrays.asList(
+                sink -> createLinks(0, 100, sink),
+                sink -> createLinks(100, 50, sink),
+                sink -> createLinks(150, 3, sink),
+                sink -> createLinks(153, 0, sink)));
+        assertEquals(153, persister.ids.size());
+        for (int id = 0; id < 153; id++) {
+            assertTrue(persister.ids.contains(id));
+        }
+    }
+
+    @Test
+    void shouldWriteAllLinksIntoEveryTarget() throws SQLException {
+        CollectingPersister fast = new CollectingPersister();
+        CollectingPersister slow = new CollectingPersister(2); // falls behind and gets its chunks spilled to disk
+        new LinkPipeline(Arrays.asList(fast, slow), 10, 1, 1).run(sink -> createLinks(0, 2000, sink));
+        assertEquals(2000, fast.ids.size());
+        assertEquals(2000, slow.ids.size());
+    }
+
+    @Test
+    void shouldSpillIntoGivenDirectory() throws SQLException, IOException {
+        File directory = Files.createTempDirectory("topogen").toFile();
+        Set<String> spillFiles = new HashSet<>();
+        CollectingPersister fast = new CollectingPersister();
+        CollectingPersister slow = new CollectingPersister(2) {
+            @Override
+            public void copyLinks(SupplierWithException<byte[]> chunks) throws InterruptedException {
+                super.copyLinks(chunks);
+                spillFiles.addAll(Arrays.asList(directory.list())); // spill files are deleted after the pipeline
+            }
+        };
+        try {
+            new LinkPipeline(Arrays.asList(fast, slow), 10, 1, 1, directory).run(sink -> createLinks(0, 2000, sink));
+            assertTrue(spillFiles.stream().anyMatch(name -> name.startsWith("topogen-target2-")), "spilled into " + spillFiles);
+            assertEquals(2000, slow.ids.size());
+            assertEquals(0, directory.list().length, "spill files are deleted at the end");
+        } finally {
+            directory.delete();
+        }
+    }
+
+    @Test
+    void shouldWaitUntilAnyTargetTakesAChunk() {
+        CollectingPersister first = new CollectingPersister(1);
+        CollectingPersister second = new CollectingPersister(1); // both fall behind, serialize has to wait for a free slot
+        assertTimeoutPreemptively(Duration.ofSeconds(30),
+                () -> new LinkPipeline(Arrays.asList(first, second), 10, 1, 1).run(sink -> createLinks(0, 2000, sink)));
+        assertEquals(2000, first.ids.size());
+        assertEquals(2000, second.ids.size());
+    }
+
+    @Test
+    void shouldCopyIntoPreparedTargetWhileAnotherIsStillPreparing() throws SQLException {
+        assertCopiesWhileAnotherTargetIsPreparing(true);
+    }
+
+    @Test
+    void shouldCopyIntoPreparedTargetWhileAnEarlierOneIsStillPreparing() throws SQLException {
+        assertCopiesWhileAnotherTargetIsPreparing(false); // the end of the chunks must not wait for the earlier target
+    }
+
+    private static void assertCopiesWhileAnotherTargetIsPreparing(boolean fastFirst) throws SQLException {
+        CountDownLatch fastCopied = new CountDownLatch(1);
+        CollectingPersister fast = new CollectingPersister() {
+            @Override
+            public void copyLinks(SupplierWithException<byte[]> chunks) throws InterruptedException {
+                super.copyLinks(chunks);
+                fastCopied.countDown();
+            }
+        };
+        CollectingPersister slow = new CollectingPersister();
+        AtomicBoolean fastCopiedWhilePreparing = new AtomicBoolean();
+        List<TopologyPersister> targets = fastFirst ? Arrays.asList(fast, slow) : Arrays.asList(slow, fast);
+        new LinkPipeline(targets, 10, 1, 1).run(Collections.singletonList(sink -> createLinks(0, 2000, sink)), persister -> {
+            if (persister == slow) {
+                try {
+                    fastCopiedWhilePreparing.set(fastCopied.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(fastCopiedWhilePreparing.get(), "the fast target must not wait for the preparation of the slow one");
+        assertEquals(2000, fast.ids.size());
+        assertEquals(2000, slow.ids.size());
+    }
+
+    @Test
+    void shouldFailWhenASourceFails() {
+        CollectingPersister persister = new CollectingPersister();
+        LinkPipeline pipeline = new LinkPipeline(persister, 10, 1, 2);
+        assertThrows(IllegalStateException.class, () -> pipeline.run(Arrays.asList(
+                sink -> createLinks(0, 10_000, sink),
+                sink -> {
+                    throw new IllegalStateException("expected");
+                })));
+    }
+
+    @Test
+    void shouldFailWhenTheWriterFails() {
+        TopologyPersister persister = new TopologyPersister((DataSource) null) {
+            @Override
+            public void copyLinks(SupplierWithException<byte[]> chunks) throws SQLException {
+                throw new SQLException("expected");
+            }
+        };
+        LinkPipeline pipeline = new LinkPipeline(persister, 10, 1, 1);
+        assertThrows(SQLException.class, () -> pipeline.run(sink -> createLinks(0, 10_000, sink)));
+    }
+
+    private static void createLinks(int firstId, int amount, Consumer<CdpLink> sink) {
+        OnmsNode node = new OnmsNode();
+        node.setId(1);
+        for (int id = firstId; id < firstId + amount; id++) {
+            CdpLink link = new CdpLink();
+            link.setId(id);
+            link.setNode(node);
+            link.setCdpCacheIfIndex(33);
+            link.setCdpInterfaceName("interface");
+            link.setCdpCacheAddressType(CdpLink.CiscoNetworkProtocolType.chaos);
+            link.setCdpCacheAddress("CdpCacheAddress");
+            link.setCdpCacheVersion("CdpCacheVersion");
+            link.setCdpCacheDeviceId("device");
+            link.setCdpCacheDevicePort("port");
+            link.setCdpCacheDevicePlatform("CdpCacheDevicePlatform");
+            link.setCdpLinkLastPollTime(new Date());
+            link.setCdpCacheDeviceIndex(33);
+            sink.accept(link);
+        }
+    }
+}
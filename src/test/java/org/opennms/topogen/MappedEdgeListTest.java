@@ -0,0 +1,208 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+public class MappedEdgeListTest {
+
+    @Test
+    void shouldReadConvertedEdgeList() throws IOException {
+        File compact = convert("# comment\n100 200\n200 300\n\n300,100\n100 100\n100\t300\n");
+        try (MappedEdgeList edges = new MappedEdgeList(compact)) {
+            assertEquals(3, edges.getAmountNodes()); // 100 -> 0, 200 -> 1, 300 -> 2
+            assertEquals(4, edges.getAmountEdges()); // self loop 100 100 is dropped
+            assertEdge(edges, 0, 1);
+            assertEdge(edges, 1, 2);
+            assertEdge(edges, 2, 0);
+            assertEdge(edges, 0, 2);
+            assertFalse(edges.next());
+
+            edges.rewind();
+            assertEdge(edges, 0, 1);
+        }
+    }
+
+    @Test
+    void shouldReadLargeIndexes() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            text.append(i).append(' ').append(999 - i == i ? 0 : 999 - i).append('\n');
+        }
+        File compact = convert(text.toString());
+        try (MappedEdgeList edges = new MappedEdgeList(compact)) {
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(edges.next());
+            }
+            assertFalse(edges.next());
+        }
+    }
+
+    @Test
+    void shouldReadAcrossWindows() throws IOException {
+        StringBuilder text = new StringBuilder();
+        int amountEdges = 0;
+        for (int i = 0; i < 500; i++) {
+            int source = (i * 37) % 300;
+            int target = (i * 91 + 1) % 300;
+            if (source != target) {
+                text.append(source).append(' ').append(target).append('\n'); // deltas need multi byte varints
+                amountEdges++;
+            }
+        }
+        File compact = convert(text.toString());
+        try (MappedEdgeList small = new MappedEdgeList(compact, 5); MappedEdgeList large = new MappedEdgeList(compact)) {
+            assertEquals(amountEdges, small.getAmountEdges());
+            for (int i = 0; i < amountEdges; i++) {
+                assertTrue(small.next());
+                assertTrue(large.next());
+                assertEquals(large.getSource(), small.getSource());
+                assertEquals(large.getTarget(), small.getTarget());
+            }
+            assertFalse(small.next());
+        }
+    }
+
+    @Test
+    void shouldMapSparseNodeIdsToDenseIndexes() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (long i = 0; i < 5000; i++) {
+            text.append(i * 1_000_000_007L).append(' ').append((i + 1) * 1_000_000_007L).append('\n'); // a path
+        }
+        File compact = convert(text.toString());
+        try (MappedEdgeList edges = new MappedEdgeList(compact)) {
+            assertEquals(5001, edges.getAmountNodes());
+            for (int i = 0; i < 5000; i++) {
+                assertEdge(edges, i, i + 1);
+            }
+        }
+    }
+
+    @Test
+    void shouldRejectTextFiles() throws IOException {
+        File text = write("1 2\n");
+        assertFalse(EdgeListFile.isCompact(text));
+        assertThrows(IOException.class, () -> new MappedEdgeList(text));
+    }
+
+    @Test
+    void shouldRejectNonNumericNodeIds() throws IOException {
+        File text = write("1 2\n2 router\n");
+        File compact = File.createTempFile("edges", ".tgel");
+        compact.deleteOnExit();
+        IOException e = assertThrows(IOException.class, () -> EdgeListFile.convert(text, compact));
+        assertTrue(e.getMessage().contains("line 2 of " + text), e.getMessage());
+    }
+
+    @Test
+    void shouldReuseConvertedEdgeList() throws IOException {
+        long now = System.currentTimeMillis();
+        File text = write("1 2\n2 3\n");
+        assertTrue(text.setLastModified(now - 60_000));
+        File compact = EdgeListFile.toCompact(text, null);
+        compact.deleteOnExit();
+        assertEquals(new File(text.getPath() + ".tgel"), compact);
+
+        assertTrue(compact.setLastModified(now - 30_000));
+        assertEquals(compact, EdgeListFile.toCompact(text, null));
+        assertEquals(now - 30_000, compact.lastModified(), 1000, "an up to date conversion is not written again");
+
+        assertTrue(text.setLastModified(now - 10_000));
+        EdgeListFile.toCompact(text, null);
+        assertTrue(compact.lastModified() > now - 10_000, "an outdated conversion is written again");
+        assertTrue(EdgeListFile.isCompact(compact));
+        assertEquals(compact, EdgeListFile.toCompact(compact, null), "compact files are used as they are");
+    }
+
+    @Test
+    void shouldConvertIntoFallbackDirectoryIfReadOnly() throws IOException {
+        File directory = Files.createTempDirectory("topogen").toFile();
+        File fallback = Files.createTempDirectory("topogen").toFile();
+        File text = new File(directory, "edges.txt");
+        try (Writer out = new FileWriter(text)) {
+            out.write("1 2\n");
+        }
+        assertTrue(directory.setWritable(false));
+        try {
+            assumeFalse(Files.isWritable(directory.toPath()), "the directory is writable anyway, e.g. for root");
+            File compact = EdgeListFile.toCompact(text, fallback);
+            assertEquals(fallback, compact.getParentFile());
+            assertTrue(EdgeListFile.isCompact(compact));
+            assertEquals(1, fallback.list().length, "no temporary files are left behind");
+            compact.delete();
+        } finally {
+            directory.setWritable(true);
+            text.delete();
+            directory.delete();
+            fallback.delete();
+        }
+    }
+
+    @Test
+    void shouldEncodeNegativeDeltas() {
+        for (int value : new int[]{0, 1, -1, 63, -64, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            assertEquals(value, EdgeListFile.unzigzag(EdgeListFile.zigzag(value)));
+        }
+    }
+
+    static File convert(String edges) throws IOException {
+        File compact = File.createTempFile("edges", ".tgel");
+        compact.deleteOnExit();
+        EdgeListFile.convert(write(edges), compact);
+        assertTrue(EdgeListFile.isCompact(compact));
+        return compact;
+    }
+
+    private static File write(String content) throws IOException {
+        File file = File.createTempFile("edges", ".txt");
+        file.deleteOnExit();
+        try (Writer out = new FileWriter(file)) {
+            out.write(content);
+        }
+        return file;
+    }
+
+    private static void assertEdge(MappedEdgeList edges, int source, int target) {
+        assertTrue(edges.next());
+        assertEquals(source, edges.getSource());
+        assertEquals(target, edges.getTarget());
+    }
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.opennms.netmgt.model.CdpLink;
+import org.opennms.netmgt.model.OnmsNode;
+
+public class OffHeapLinkStoreTest {
+
+    @Test
+    void shouldReadLinksBackFromDirectMemory() throws IOException {
+        try (OffHeapLinkStore store = new OffHeapLinkStore(100, null)) {
+            assertRoundTrip(store, createLinks(100));
+        }
+    }
+
+    @Test
+    void shouldReadLinksBackFromMappedFiles() throws IOException {
+        File directory = Files.createTempDirectory("topogen").toFile();
+        try (OffHeapLinkStore store = new OffHeapLinkStore(100, directory)) {
+            assertRoundTrip(store, createLinks(100));
+        }
+        assertEquals(0, directory.list().length, "staging files must be deleted on close");
+        directory.delete();
+    }
+
+    @Test
+    void shouldSpreadValuesOverSegments() throws IOException {
+        // 16 links per column segment and 3 UUIDs per arena segment, strings must not cross segments
+        try (OffHeapLinkStore store = new OffHeapLinkStore(null, 128)) {
+            assertRoundTrip(store, createLinks(100));
+        }
+    }
+
+    @Test
+    void shouldStoreRepeatedValuesOnce() throws IOException {
+        try (OffHeapLinkStore store = new OffHeapLinkStore(1000, null)) {
+            for (CdpLink link : createLinks(1000)) {
+                store.add(link);
+            }
+            // per link two unique UUIDs, the shared values are stored only once
+            long uuids = 1000 * 2 * (Integer.BYTES + 36);
+            assertTrue(store.getArenaSize() < uuids + 1000, "arena size was " + store.getArenaSize());
+        }
+    }
+
+    @Test
+    void shouldEncodeSameRowsAsForHeapLinks() throws IOException {
+        List<CdpLink> links = createLinks(10);
+        links.get(3).setCdpCacheVersion(null);
+        links.get(4).setCdpInterfaceName("tab\tand \u00fcmlaut");
+        try (OffHeapLinkStore store = new OffHeapLinkStore(10, null)) {
+            for (CdpLink link : links) {
+                store.add(link);
+            }
+            assertEquals(withoutCreateTime(TopologyPersister.encodeLinks(links)),
+                    withoutCreateTime(TopologyPersister.encodeLinks(store, 0, store.size())));
+        }
+    }
+
+    private static void assertRoundTrip(OffHeapLinkStore store, List<CdpLink> links) {
+        for (CdpLink link : links) {
+            store.add(link);
+        }
+        assertEquals(links.size(), store.size());
+        List<CdpLink> stored = store.asList();
+        for (int i = 0; i < links.size(); i++) {
+            CdpLink expected = links.get(i);
+            CdpLink actual = stored.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getNode().getId(), actual.getNode().getId());
+            assertEquals(expected.getCdpCacheIfIndex(), actual.getCdpCacheIfIndex());
+            assertEquals(expected.getCdpInterfaceName(), actual.getCdpInterfaceName());
+            assertEquals(expected.getCdpCacheAddressType(), actual.getCdpCacheAddressType());
+            assertEquals(expected.getCdpCacheAddress(), actual.getCdpCacheAddress());
+            assertEquals(expected.getCdpCacheVersion(), actual.getCdpCacheVersion());
+            assertEquals(expected.getCdpCacheDeviceId(), actual.getCdpCacheDeviceId());
+            assertEquals(expected.getCdpCacheDevicePort(), actual.getCdpCacheDevicePort());
+            assertEquals(expected.getCdpCacheDevicePlatform(), actual.getCdpCacheDevicePlatform());
+            assertEquals(expected.getCdpLinkLastPollTime(), actual.getCdpLinkLastPollTime());
+            assertEquals(expected.getCdpCacheDeviceIndex(), actual.getCdpCacheDeviceIndex());
+        }
+        assertNull(stored.get(0).getCdpCacheVersion());
+    }
+
+    private static List<CdpLink> createLinks(int amount) {
+        List<CdpLink> links = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            OnmsNode node = new OnmsNode();
+            node.setId(i % 7);
+            CdpLink link = new CdpLink();
+            link.setId(i);
+            link.setNode(node);
+            link.setCdpCacheIfIndex(i * 3);
+            link.setCdpInterfaceName(UUID.randomUUID().toString());
+            link.setCdpCacheAddressType(CdpLink.CiscoNetworkProtocolType.chaos);
+            link.setCdpCacheAddress("CdpCacheAddress");
+            link.setCdpCacheVersion(i == 0 ? null : "CdpCacheVersion");
+            link.setCdpCacheDeviceId("CdpElementForNode" + (i % 5));
+            link.setCdpCacheDevicePort(UUID.randomUUID().toString());
+            link.setCdpCacheDevicePlatform("CdpCacheDevicePlatform");
+            link.setCdpLinkLastPollTime(new Date(1_500_000_000_000L + i));
+            link.setCdpCacheDeviceIndex(33);
+            links.add(link);
+        }
+        return links;
+    }
+
+    /** The create time is the time of encoding and differs between two calls. */
+    private static List<String> withoutCreateTime(byte[] rows) {
+        List<String> result = new ArrayList<>();
+        for (String row : new String(rows, StandardCharsets.UTF_8).split("\n")) {
+            result.add(row.substring(0, row.lastIndexOf('\t')));
+        }
+        return result;
+    }
+}
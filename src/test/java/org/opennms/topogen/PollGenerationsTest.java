@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class PollGenerationsTest {
+
+    private final static long NOW = 1_500_000_000_000L;
+
+    @Test
+    void shouldUseLatestPollTimeWithoutStaleLinks() {
+        PollGenerations generations = new PollGenerations(1, 60, 0, NOW);
+        for (int id = 0; id < 1000; id += 2) {
+            assertSame(generations.getLatestPollTime(), generations.getLastPollTime(id));
+        }
+        assertEquals(NOW, generations.getLatestPollTime().getTime());
+    }
+
+    @Test
+    void shouldSpreadStaleLinksOverOlderGenerations() {
+        PollGenerations generations = new PollGenerations(5, 60, 30, NOW);
+        Set<Long> pollTimes = new HashSet<>();
+        int stale = 0;
+        for (int id = 0; id < 100_000; id += 2) {
+            Date pollTime = generations.getLastPollTime(id);
+            pollTimes.add(pollTime.getTime());
+            if (pollTime.getTime() < NOW) {
+                stale++;
+                assertTrue(pollTime.getTime() >= NOW - TimeUnit.MINUTES.toMillis(60));
+            }
+            assertEquals(pollTime, generations.getLastPollTime(id), "must be the same in every call");
+        }
+        assertEquals(5, pollTimes.size());
+        assertTrue(pollTimes.contains(NOW - TimeUnit.MINUTES.toMillis(60)), "oldest generation is at the start of the window");
+        assertTrue(stale > 14_000 && stale < 16_000, "expected about 30% of 50000 link pairs to be stale but was " + stale);
+    }
+
+    @Test
+    void shouldRejectInvalidSetup() {
+        assertThrows(IllegalArgumentException.class, () -> new PollGenerations(0, 60, 0, NOW));
+        assertThrows(IllegalArgumentException.class, () -> new PollGenerations(1, 60, 10, NOW));
+        assertThrows(IllegalArgumentException.class, () -> new PollGenerations(5, 60, 0, NOW));
+        assertThrows(IllegalArgumentException.class, () -> new PollGenerations(3, 60, 101, NOW));
+        assertThrows(IllegalArgumentException.class, () -> new PollGenerations(3, -1, 10, NOW));
+    }
+}
@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class RangeChecksumsTest {
+
+    @Test
+    void shouldNotDependOnOrder() {
+        RangeChecksums ascending = new RangeChecksums(10);
+        RangeChecksums descending = new RangeChecksums(10);
+        for (int id = 0; id < 100; id++) {
+            ascending.add(id, id * 0x9E3779B97F4A7C15L);
+            descending.add(99 - id, (99 - id) * 0x9E3779B97F4A7C15L);
+        }
+        assertTrue(ascending.compare(descending, "t").isEmpty());
+        assertEquals(100, ascending.getAmountRows());
+    }
+
+    @Test
+    void shouldMergePartialChecksums() {
+        RangeChecksums all = new RangeChecksums(10);
+        RangeChecksums even = new RangeChecksums(10);
+        RangeChecksums odd = new RangeChecksums(10);
+        for (int id = 0; id < 100; id++) {
+            all.add(id, Long.MAX_VALUE - id); // sums overflow
+            (id % 2 == 0 ? even : odd).add(id, Long.MAX_VALUE - id);
+        }
+        even.merge(odd);
+        assertTrue(all.compare(even, "t").isEmpty());
+    }
+
+    @Test
+    void shouldReportOnlyDifferingRanges() {
+        RangeChecksums expected = new RangeChecksums(10);
+        RangeChecksums actual = new RangeChecksums(10);
+        for (int id = 0; id < 100; id++) {
+            expected.add(id, id);
+            if (id != 42) {
+                actual.add(id, id == 77 ? -1 : id);
+            }
+        }
+        actual.add(120, 120);
+        List<String> mismatches = expected.compare(actual, "t");
+        assertEquals(3, mismatches.size());
+        assertTrue(mismatches.get(0).startsWith("t ids [40, 50): expected 10 rows"), mismatches.get(0));
+        assertTrue(mismatches.get(1).startsWith("t ids [70, 80): expected 10 rows"), mismatches.get(1));
+        assertTrue(mismatches.get(2).startsWith("t ids [120, 130): expected 0 rows"), mismatches.get(2));
+    }
+}
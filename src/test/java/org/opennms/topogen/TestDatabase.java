@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Database for the persistence tests: an in-memory H2 in PostgreSQL mode with the node, cdpelement and cdplink tables
+ * by default, the COPY of the pipeline and of staged links is emulated with batch inserts there. Point it to a real
+ * PostgreSQL with the system properties topogen.test.db.url, topogen.test.db.user and topogen.test.db.password to
+ * test the real COPY.
+ */
+class TestDatabase implements AutoCloseable {
+
+    private final static String H2_URL = "jdbc:h2:mem:topogen;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:/topology-schema.sql'";
+
+    private final HikariDataSource ds;
+    private final boolean h2;
+
+    TestDatabase() {
+        String url = System.getProperty("topogen.test.db.url", H2_URL);
+        h2 = url.startsWith("jdbc:h2:");
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(url);
+        config.setUsername(System.getProperty("topogen.test.db.user", "sa"));
+        config.setPassword(System.getProperty("topogen.test.db.password", ""));
+        ds = new HikariDataSource(config);
+    }
+
+    /** H2 has no COPY, it gets a persister that emulates it with batch inserts. */
+    TopologyPersister createPersister() {
+        return h2 ? new CopyEmulatingPersister(ds) : new TopologyPersister(ds);
+    }
+
+    long count(String query) throws SQLException {
+        try (Connection c = ds.getConnection();
+             Statement stmt = c.createStatement();
+             ResultSet result = stmt.executeQuery(query)) {
+            result.next();
+            return result.getLong(1);
+        }
+    }
+
+    void execute(String statement) throws SQLException {
+        try (Connection c = ds.getConnection();
+             Statement stmt = c.createStatement()) {
+            stmt.execute(statement);
+        }
+    }
+
+    @Override
+    public void close() {
+        ds.close();
+    }
+}
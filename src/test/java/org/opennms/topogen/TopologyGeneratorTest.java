@@ -2,7 +2,9 @@ package org.opennms.topogen;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
 
 import org.junit.jupiter.api.Test;
 
@@ -13,4 +15,33 @@ class TopologyGeneratorTest {
         generator.setTopology("invalid topology");
         assertThrows(IllegalArgumentException.class, generator::assertSetup);
     }
+
+    @Test
+    void shouldRejectStaleLinksWithoutOlderGenerations() throws IOException {
+        TopologyGenerator generator = new TopologyGenerator(null);
+        generator.setStalePercent(10);
+        assertThrows(IllegalArgumentException.class, generator::assertSetup);
+    }
+
+    @Test
+    void shouldRejectOlderGenerationsWithoutStaleLinks() throws IOException {
+        TopologyGenerator generator = new TopologyGenerator(null);
+        generator.setPollGenerations(4);
+        assertThrows(IllegalArgumentException.class, generator::assertSetup);
+    }
+
+    @Test
+    void shouldRejectScaleBeyondIntegerRange() throws IOException {
+        TopologyGenerator generator = new TopologyGenerator(null);
+        generator.setEdgesFile(MappedEdgeListTest.convert("1 2\n2 3\n"));
+        generator.setScale(Integer.MAX_VALUE / 2);
+        assertThrows(IllegalArgumentException.class, generator::assertSetup);
+    }
+
+    @Test
+    void shouldAcceptTopologySpec() throws IOException, URISyntaxException {
+        TopologyGenerator generator = new TopologyGenerator(null);
+        generator.setSpecFile(new File(getClass().getResource("/composite-topology.yml").toURI()));
+        generator.assertSetup();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opennms.netmgt.model.CdpLink;
+import org.opennms.netmgt.model.OnmsNode;
+import org.opennms.netmgt.model.monitoringLocations.OnmsMonitoringLocation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists a topology with every persistence mode, measures the throughput and checks the written rows. Runs against
+ * the {@link TestDatabase}; the size and a minimum throughput can be set with the system properties topogen.test.nodes,
+ * topogen.test.links and topogen.test.minLinksPerSecond.
+ */
+public class TopologyPersisterTest {
+
+    private final static Logger LOG = LoggerFactory.getLogger(TopologyPersisterTest.class);
+
+    private final static int NODES = Integer.getInteger("topogen.test.nodes", 200);
+    private final static int LINKS = Integer.getInteger("topogen.test.links", 10_000);
+    private final static long MIN_LINKS_PER_SECOND = Long.getLong("topogen.test.minLinksPerSecond", 0L);
+
+    private static TestDatabase database;
+
+    @BeforeAll
+    static void setUpDatabase() {
+        database = new TestDatabase();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        database.close();
+    }
+
+    @Test
+    void shouldPersistWithBatchInserts() throws Exception {
+        persistAndVerify("batch");
+    }
+
+    @Test
+    void shouldPersistWithPipeline() throws Exception {
+        persistAndVerify("pipeline");
+    }
+
+    @Test
+    void shouldPersistStagedLinks() throws Exception {
+        persistAndVerify("staged");
+    }
+
+    @Test
+    void shouldStageSegmentsOfASpecInParallel() throws Exception {
+        for (String persist : Arrays.asList("staged", "batch")) {
+            TopologyPersister persister = database.createPersister();
+            persister.deleteTopology();
+            TopologyGenerator generator = new TopologyGenerator(persister);
+            generator.setSpecFile(new File(getClass().getResource("/composite-topology.yml").toURI()));
+            generator.setGeneratorThreads(3);
+            generator.setPersist(persist);
+            generator.assertSetup();
+            generator.createCdpNetwork();
+            // 12 + 10 + 100 links in the segments, 4 + 20 in the interconnects
+            assertEquals(146, database.count("SELECT COUNT(DISTINCT id) FROM cdplink"), persist);
+            assertEquals(145, database.count("SELECT MAX(id) FROM cdplink"), persist);
+        }
+    }
+
+    @Test
+    void shouldCopyRowsSplitBetweenChunks() throws Exception {
+        TopologyPersister persister = database.createPersister();
+        persister.deleteTopology();
+        OnmsMonitoringLocation location = new OnmsMonitoringLocation();
+        location.setLocationName("Default");
+        OnmsNode node = new OnmsNode();
+        node.setId(1);
+        node.setLabel("Node1");
+        node.setLocation(location);
+        persister.persistNodes(Collections.singletonList(node));
+        List<CdpLink> links = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            CdpLink link = new CdpLink();
+            link.setId(i);
+            link.setNode(node);
+            link.setCdpCacheIfIndex(1);
+            link.setCdpInterfaceName("tab\tnewline\nback\\slash " + i);
+            link.setCdpCacheAddressType(CdpLink.CiscoNetworkProtocolType.chaos);
+            link.setCdpCacheAddress("address");
+            link.setCdpCacheVersion("version");
+            link.setCdpCacheDeviceId("device");
+            link.setCdpCacheDevicePort("port");
+            link.setCdpCacheDevicePlatform("platform");
+            link.setCdpLinkLastPollTime(new Date());
+            link.setCdpCacheDeviceIndex(1);
+            links.add(link);
+        }
+        byte[] rows = TopologyPersister.encodeLinks(links);
+        Iterator<byte[]> chunks = Arrays.asList(Arrays.copyOfRange(rows, 0, 7), Arrays.copyOfRange(rows, 7, rows.length - 3),
+                Arrays.copyOfRange(rows, rows.length - 3, rows.length)).iterator();
+        persister.copyLinks(() -> chunks.hasNext() ? chunks.next() : null);
+
+        assertEquals(3, database.count("SELECT COUNT(*) FROM cdplink"));
+        assertEquals(1, database.count("SELECT COUNT(*) FROM cdplink WHERE cdpinterfacename = 'tab' || CHR(9) || 'newline' || CHR(10) || 'back\\slash 2'"));
+    }
+
+    @Test
+    void shouldMeasureCleanupOfStaleLinks() throws Exception {
+        TopologyPersister persister = database.createPersister();
+        persister.deleteTopology();
+        TopologyGenerator generator = new TopologyGenerator(persister);
+        generator.setAmountNodes(NODES);
+        generator.setAmountLinks(LINKS);
+        generator.setPersist("batch");
+        generator.setPollGenerations(4);
+        generator.setStalePercent(25);
+        generator.assertSetup();
+        generator.createCdpNetwork();
+
+        long staleLinks = database.count("SELECT COUNT(*) FROM cdplink l JOIN cdpelement e ON e.nodeid = l.nodeid"
+                + " WHERE l.cdplinklastpolltime < e.cdpnodelastpolltime");
+        assertTrue(staleLinks > LINKS * 0.2 && staleLinks < LINKS * 0.3, "expected about 25% stale links but found " + staleLinks);
+        assertEquals(4, database.count("SELECT COUNT(DISTINCT cdplinklastpolltime) FROM cdplink"));
+        assertEquals(staleLinks, persister.measureCleanup());
+        assertEquals(LINKS, database.count("SELECT COUNT(*) FROM cdplink"), "the cleanup must be rolled back");
+    }
+
+    private void persistAndVerify(String persist) throws IOException, SQLException {
+        TopologyPersister persister = database.createPersister();
+        persister.deleteTopology();
+        TopologyGenerator generator = new TopologyGenerator(persister);
+        generator.setAmountNodes(NODES);
+        generator.setAmountLinks(LINKS);
+        generator.setPersist(persist);
+        generator.assertSetup();
+
+        long start = System.nanoTime();
+        generator.createCdpNetwork();
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        long linksPerSecond = LINKS * 1000L / millis;
+        LOG.info("persist {}: {} nodes, {} elements and {} links in {} ms, {} links/s", persist, NODES, NODES, LINKS, millis, linksPerSecond);
+
+        assertEquals(NODES, database.count("SELECT COUNT(*) FROM node"));
+        assertEquals(NODES, database.count("SELECT COUNT(*) FROM cdpelement"));
+        assertEquals(LINKS, database.count("SELECT COUNT(*) FROM cdplink"));
+        assertEquals(LINKS, database.count("SELECT COUNT(DISTINCT id) FROM cdplink"));
+        assertEquals(0, database.count("SELECT COUNT(*) FROM cdpelement e WHERE NOT EXISTS (SELECT 1 FROM node n WHERE n.nodeid = e.nodeid)"));
+        assertEquals(0, database.count("SELECT COUNT(*) FROM cdplink l WHERE NOT EXISTS (SELECT 1 FROM node n WHERE n.nodeid = l.nodeid)"));
+        assertEquals(0, database.count("SELECT COUNT(*) FROM cdplink l WHERE NOT EXISTS (SELECT 1 FROM cdpelement e WHERE e.cdpglobaldeviceid = l.cdpcachedeviceid)"));
+        // every link has exactly one reciprocal link with interface and port swapped, see LinkdToplologyProvider.matchCdpLinks()
+        assertEquals(0, database.count("SELECT COUNT(*) FROM (SELECT COUNT(*) FROM cdplink"
+                + " GROUP BY LEAST(cdpinterfacename, cdpcachedeviceport), GREATEST(cdpinterfacename, cdpcachedeviceport)"
+                + " HAVING COUNT(*) <> 2) AS unmatched"));
+        assertTrue(linksPerSecond >= MIN_LINKS_PER_SECOND,
+                String.format("expected at least %s links/s but was %s", MIN_LINKS_PER_SECOND, linksPerSecond));
+    }
+}
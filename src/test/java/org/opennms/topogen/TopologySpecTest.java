@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.net.URISyntaxException;
+
+import org.junit.jupiter.api.Test;
+
+public class TopologySpecTest {
+
+    @Test
+    void shouldReadYaml() throws Exception {
+        TopologySpec spec = TopologySpec.read(resource("composite-topology.yml"));
+        spec.assertValid();
+        assertEquals(3, spec.getSegments().size());
+        assertEquals(2, spec.getInterconnects().size());
+        assertEquals("ring", spec.getSegment("distribution").getTopology());
+        assertEquals(64, spec.getAmountNodes());
+        assertEquals(12 + 10 + 100 + 4 + 20, spec.getAmountLinks());
+    }
+
+    @Test
+    void shouldReadJsonAndDefaultLinksToCompleteSegment() throws Exception {
+        TopologySpec spec = TopologySpec.read(resource("composite-topology.json"));
+        spec.assertValid();
+        assertEquals(12, spec.getSegment("core").getLinks());
+        assertEquals(12 + 40 + 8, spec.getAmountLinks());
+    }
+
+    @Test
+    void shouldRoundOddLinkCountsUpToPairs() throws Exception {
+        TopologySpec spec = TopologySpec.read(resource("composite-topology.json"));
+        spec.getSegment("access").setLinks(41);
+        spec.getInterconnects().get(0).setLinks(7);
+        spec.assertValid();
+        assertEquals(42, spec.getSegment("access").getLinks());
+        assertEquals(12 + 42 + 8, spec.getAmountLinks()); // the amount of links that is written
+    }
+
+    @Test
+    void shouldRejectInterconnectToUnknownSegment() throws Exception {
+        TopologySpec spec = TopologySpec.read(resource("composite-topology.json"));
+        spec.getInterconnects().get(0).setTo("unknown");
+        assertThrows(IllegalArgumentException.class, spec::assertValid);
+    }
+
+    @Test
+    void shouldRejectDuplicateSegmentNames() throws Exception {
+        TopologySpec spec = TopologySpec.read(resource("composite-topology.json"));
+        spec.getSegments().get(1).setName("core");
+        assertThrows(IllegalArgumentException.class, spec::assertValid);
+    }
+
+    private File resource(String name) throws URISyntaxException {
+        return new File(getClass().getResource("/" + name).toURI());
+    }
+}
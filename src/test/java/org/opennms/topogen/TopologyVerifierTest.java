@@ -0,0 +1,116 @@
+/*******************************************************************************
+ * This file is part of OpenNMS(R).
+ *
+ * Copyright (C) 2018 The OpenNMS Group, Inc.
+ * OpenNMS(R) is Copyright (C) 1999-2018 The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is a registered trademark of The OpenNMS Group, Inc.
+ *
+ * OpenNMS(R) is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * OpenNMS(R) is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with OpenNMS(R).  If not, see:
+ *      http://www.gnu.org/licenses/
+ *
+ * For more information contact:
+ *     OpenNMS(R) Licensing <license@opennms.org>
+ *     http://www.opennms.org/
+ *     http://www.opennms.com/
+ *******************************************************************************/
+
+package org.opennms.topogen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TopologyVerifierTest {
+
+    private final static int NODES = 50;
+    private final static int LINKS = 2000;
+
+    private static TestDatabase database;
+
+    @BeforeAll
+    static void setUpDatabase() {
+        database = new TestDatabase();
+    }
+
+    @AfterAll
+    static void closeDatabase() {
+        database.close();
+    }
+
+    @BeforeEach
+    void persistTopology() throws IOException, SQLException {
+        TopologyPersister persister = database.createPersister();
+        persister.deleteTopology();
+        TopologyGenerator generator = createGenerator(persister);
+        generator.setPersist("batch");
+        generator.assertSetup();
+        generator.createCdpNetwork();
+    }
+
+    @Test
+    void shouldAcceptPersistedTopology() throws IOException, SQLException {
+        TopologyGenerator verifier = createGenerator(database.createPersister());
+        verifier.setVerify(true);
+        verifier.assertSetup();
+        verifier.verifyCdpNetwork();
+    }
+
+    @Test
+    void shouldReportChangedAndMissingRows() throws IOException, SQLException {
+        database.execute("UPDATE cdplink SET cdpcachedeviceport = 'changed' WHERE id = 1001");
+        database.execute("DELETE FROM cdplink WHERE id = 7");
+        database.execute("DELETE FROM cdpelement WHERE id = 3");
+        TopologyGenerator verifier = createGenerator(database.createPersister());
+        verifier.setVerify(true);
+        verifier.assertSetup();
+        IllegalStateException e = assertThrows(IllegalStateException.class, verifier::verifyCdpNetwork);
+        assertEquals("verification failed, 2 ranges of ids differ", e.getMessage()); // both links are in the same range
+    }
+
+    @Test
+    void shouldReportDifferentTopology() throws IOException, SQLException {
+        TopologyGenerator verifier = createGenerator(database.createPersister());
+        verifier.setTopology("ring");
+        verifier.setVerify(true);
+        verifier.assertSetup();
+        assertThrows(IllegalStateException.class, verifier::verifyCdpNetwork);
+    }
+
+    @Test
+    void shouldComputeSameHashInDatabase() throws SQLException {
+        TopologyPersister persister = database.createPersister();
+        ChecksumDialect dialect = persister.getChecksumDialect();
+        RangeChecksums expected = new RangeChecksums(10);
+        for (int id = 0; id < NODES; id++) {
+            expected.add(id, dialect.hash(id, "Node" + id, "Default"));
+        }
+        RangeChecksums actual = persister.checksums("node", new String[]{"nodeid", "nodelabel", "location"}, 10);
+        assertEquals(0, expected.compare(actual, "node").size(), () -> expected.compare(actual, "node").toString());
+    }
+
+    private static TopologyGenerator createGenerator(TopologyPersister persister) throws IOException {
+        TopologyGenerator generator = new TopologyGenerator(persister);
+        generator.setAmountNodes(NODES);
+        generator.setAmountLinks(LINKS);
+        return generator;
+    }
+}
@@ -0,0 +1,34 @@
+-- the tables and columns of the OpenNMS schema written by the TopologyPersister
+CREATE TABLE IF NOT EXISTS node (
+    nodeid integer NOT NULL PRIMARY KEY,
+    nodelabel varchar(256) NOT NULL,
+    location text NOT NULL,
+    nodecreatetime timestamp NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS cdpelement (
+    id integer NOT NULL PRIMARY KEY,
+    nodeid integer NOT NULL,
+    cdpglobalrun integer NOT NULL,
+    cdpglobaldeviceid text NOT NULL,
+    cdpnodecreatetime timestamp NOT NULL,
+    cdpnodelastpolltime timestamp NOT NULL,
+    CONSTRAINT fk_nodeid_cdpelement FOREIGN KEY (nodeid) REFERENCES node (nodeid) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS cdplink (
+    id integer NOT NULL PRIMARY KEY,
+    nodeid integer NOT NULL,
+    cdpcacheifindex integer NOT NULL,
+    cdpcachedeviceindex integer NOT NULL,
+    cdpinterfacename text,
+    cdpcacheaddresstype integer NOT NULL,
+    cdpcacheaddress text NOT NULL,
+    cdpcacheversion text NOT NULL,
+    cdpcachedeviceid text NOT NULL,
+    cdpcachedeviceport text NOT NULL,
+    cdpcachedeviceplatform text NOT NULL,
+    cdplinkcreatetime timestamp NOT NULL,
+    cdplinklastpolltime timestamp NOT NULL,
+    CONSTRAINT fk_nodeid_cdplink FOREIGN KEY (nodeid) REFERENCES node (nodeid) ON DELETE CASCADE
+);